@@ -0,0 +1,87 @@
+package org.leo.boot.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Bounded share of the request threads for a group of routes : at most maxConcurrent requests of the group run at once,
+ * at most maxQueued more wait for a slot (first come first served) during queueTimeoutMillis, the others are rejected
+ * So a group stuck on a slow backend holds at most maxConcurrent + maxQueued threads, the other groups keep theirs
+ * @author fahdessid
+ */
+public class Bulkhead {
+
+  public Bulkhead(String name, int maxConcurrent, int maxQueued, long queueTimeoutMillis) {
+    this.name = name;
+    this.maxConcurrent = maxConcurrent;
+    this.maxQueued = maxQueued;
+    this.queueTimeoutMillis = queueTimeoutMillis;
+    this.permits = new Semaphore(maxConcurrent, true);
+  }
+
+  /**
+   * @return true if the request may run, it must then call exit() once done
+   */
+  public boolean tryEnter() throws InterruptedException {
+    if (permits.tryAcquire()) {
+      return true;
+    }
+
+    if (queued.incrementAndGet() > maxQueued) {
+      queued.decrementAndGet();
+      rejectedQueueFull.increment();
+      return false;
+    }
+
+    try {
+      if (permits.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) {
+        return true;
+      }
+
+      rejectedTimeout.increment();
+      return false;
+    } finally {
+      queued.decrementAndGet();
+    }
+  }
+
+  public void exit() {
+    permits.release();
+    completed.increment();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+    int active = maxConcurrent - permits.availablePermits();
+
+    metrics.add(new Metric<Integer>("bulkhead." + name + ".active", active));
+    metrics.add(new Metric<Integer>("bulkhead." + name + ".queued", queued.get()));
+    metrics.add(new Metric<Double>("bulkhead." + name + ".saturation", (double) active / maxConcurrent));
+    metrics.add(new Metric<Long>("bulkhead." + name + ".completed", completed.sum()));
+    metrics.add(new Metric<Long>("bulkhead." + name + ".rejected.queue-full", rejectedQueueFull.sum()));
+    metrics.add(new Metric<Long>("bulkhead." + name + ".rejected.timeout", rejectedTimeout.sum()));
+
+    return metrics;
+  }
+
+  private final String name;
+  private final int maxConcurrent;
+  private final int maxQueued;
+  private final long queueTimeoutMillis;
+  private final Semaphore permits;
+  private final AtomicInteger queued = new AtomicInteger();
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder rejectedQueueFull = new LongAdder();
+  private final LongAdder rejectedTimeout = new LongAdder();
+}
@@ -0,0 +1,210 @@
+package org.leo.boot.concurrent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Circuit breaker over the last windowSize calls : once minimumCalls are known, it opens when the rate of failed calls
+ * or the rate of calls slower than slowCallMillis reaches its threshold (percent)
+ * Open, calls are rejected at once with a CircuitOpenException for openMillis, then it is half open : the next
+ * halfOpenCalls calls are let through as trials (the others are still rejected), it closes if they all succeed
+ * in time and opens again otherwise
+ * Only the exceptions matching isFailure count as failures, the others (a duplicate key...) say nothing about the backend
+ * @author fahdessid
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRateThreshold, long slowCallMillis,
+      int slowCallRateThreshold, long openMillis, int halfOpenCalls, Predicate<Throwable> isFailure) {
+    this.name = name;
+    this.outcomes = new byte[windowSize];
+    this.minimumCalls = Math.min(minimumCalls, windowSize);
+    this.failureRateThreshold = failureRateThreshold;
+    this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+    this.slowCallRateThreshold = slowCallRateThreshold;
+    this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    this.halfOpenCalls = halfOpenCalls;
+    this.isFailure = isFailure;
+  }
+
+  /**
+   * @throws CircuitOpenException without calling when the circuit does not let the call through
+   */
+  public <T> T execute(Supplier<T> call) {
+    if (!tryAcquire()) {
+      rejected.increment();
+      throw new CircuitOpenException(name);
+    }
+
+    long start = System.nanoTime();
+
+    try {
+      T result = call.get();
+
+      onResult(System.nanoTime() - start, false);
+      return result;
+    } catch (RuntimeException | Error e) {
+      onResult(System.nanoTime() - start, isFailure.test(e));
+      throw e;
+    }
+  }
+
+  /**
+   * @return true if the exception is a failure of the backend, as counted by the circuit
+   */
+  public boolean isFailure(Throwable e) {
+    return isFailure.test(e);
+  }
+
+  public State getState() {
+    return state;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+    String prefix = "circuit." + name + ".";
+
+    metrics.add(new Metric<Integer>(prefix + "state", state.ordinal()));
+    metrics.add(new Metric<Long>(prefix + "calls", calls.sum()));
+    metrics.add(new Metric<Long>(prefix + "failed", failed.sum()));
+    metrics.add(new Metric<Long>(prefix + "slow", slow.sum()));
+    metrics.add(new Metric<Long>(prefix + "rejected", rejected.sum()));
+
+    for (State target : State.values()) {
+      metrics.add(new Metric<Long>(prefix + "transitions." + target.name().toLowerCase(), transitions[target.ordinal()].sum()));
+    }
+
+    return metrics;
+  }
+
+  private synchronized boolean tryAcquire() {
+    if (state == State.OPEN) {
+      if (System.nanoTime() - openedAt < openNanos) {
+        return false;
+      }
+      transition(State.HALF_OPEN);
+    }
+
+    if (state == State.HALF_OPEN) {
+      if (trialsStarted >= halfOpenCalls) {
+        return false;
+      }
+      trialsStarted++;
+    }
+    return true;
+  }
+
+  private synchronized void onResult(long nanos, boolean failure) {
+    boolean slowCall = nanos >= slowCallNanos;
+
+    calls.increment();
+    if (failure) {
+      failed.increment();
+    }
+    if (slowCall) {
+      slow.increment();
+    }
+
+    if (state == State.HALF_OPEN) {
+      if (failure || slowCall) {
+        transition(State.OPEN);
+      } else if (++trialsSucceeded >= halfOpenCalls) {
+        transition(State.CLOSED);
+      }
+      return;
+    }
+
+    if (state == State.OPEN) {
+      // a call let through before the circuit opened
+      return;
+    }
+
+    byte outcome = (byte) ((failure ? FAILURE : 0) | (slowCall ? SLOW : 0));
+
+    if (recorded == outcomes.length) {
+      byte evicted = outcomes[next];
+
+      failures -= (evicted & FAILURE) != 0 ? 1 : 0;
+      slowCalls -= (evicted & SLOW) != 0 ? 1 : 0;
+    } else {
+      recorded++;
+    }
+    outcomes[next] = outcome;
+    next = (next + 1) % outcomes.length;
+    failures += failure ? 1 : 0;
+    slowCalls += slowCall ? 1 : 0;
+
+    if (recorded >= minimumCalls
+        && (failures * 100 >= failureRateThreshold * recorded || slowCalls * 100 >= slowCallRateThreshold * recorded)) {
+      LOGGER.warn("Circuit {} opens : {} failed and {} slow calls out of the last {}", name, failures, slowCalls, recorded);
+      transition(State.OPEN);
+    }
+  }
+
+  private void transition(State target) {
+    if (target != State.OPEN || state != State.CLOSED) {
+      LOGGER.warn("Circuit {} : {} to {}", name, state, target);
+    }
+
+    state = target;
+    transitions[target.ordinal()].increment();
+
+    if (target == State.OPEN) {
+      openedAt = System.nanoTime();
+    } else if (target == State.HALF_OPEN) {
+      trialsStarted = 0;
+      trialsSucceeded = 0;
+    } else {
+      // closed : a fresh window, the calls of before the opening are history
+      recorded = 0;
+      next = 0;
+      failures = 0;
+      slowCalls = 0;
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+  private static final byte FAILURE = 1;
+  private static final byte SLOW = 2;
+
+  private final String name;
+  private final int minimumCalls;
+  private final int failureRateThreshold;
+  private final long slowCallNanos;
+  private final int slowCallRateThreshold;
+  private final long openNanos;
+  private final int halfOpenCalls;
+  private final Predicate<Throwable> isFailure;
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final LongAdder slow = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder[] transitions = {new LongAdder(), new LongAdder(), new LongAdder()};
+  /** the window and the state are guarded by this */
+  private final byte[] outcomes;
+  private int recorded;
+  private int next;
+  private int failures;
+  private int slowCalls;
+  private volatile State state = State.CLOSED;
+  private long openedAt;
+  private int trialsStarted;
+  private int trialsSucceeded;
+}
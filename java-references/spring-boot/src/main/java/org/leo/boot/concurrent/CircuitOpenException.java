@@ -0,0 +1,18 @@
+package org.leo.boot.concurrent;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * A call refused by an open CircuitBreaker, answered 503 when it reaches Spring MVC
+ * @author fahdessid
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CircuitOpenException extends RuntimeException {
+
+  public CircuitOpenException(String circuit) {
+    super("Circuit " + circuit + " is open");
+  }
+
+  private static final long serialVersionUID = 1L;
+}
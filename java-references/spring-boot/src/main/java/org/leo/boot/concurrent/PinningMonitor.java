@@ -0,0 +1,129 @@
+package org.leo.boot.concurrent;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Watches virtual threads pinned to their carrier thread, mostly by blocking I/O inside a synchronized block
+ * (the MySQL and Mongo drivers use many) : a pinned virtual thread holds a carrier, with enough of them the
+ * application is back to a small platform thread pool
+ *
+ * The jdk.VirtualThreadPinned JFR events longer than the threshold are streamed (JDK 14+ RecordingStream,
+ * through reflection), counted, and the first pinning of every code site is logged with its stack
+ * @author fahdessid
+ */
+public class PinningMonitor implements PublicMetrics {
+
+  public PinningMonitor(long thresholdMillis, int stackDepth) {
+    this.thresholdMillis = thresholdMillis;
+    this.stackDepth = stackDepth;
+  }
+
+  /**
+   * @return false if the JVM has no JFR event streaming
+   */
+  public boolean start() {
+    try {
+      Class<?> streamType = Class.forName("jdk.jfr.consumer.RecordingStream");
+      Object stream = streamType.getConstructor().newInstance();
+      Object settings = streamType.getMethod("enable", String.class).invoke(stream, EVENT);
+      // looked up on the public type, the settings object is an instance of an internal class
+      Class<?> settingsType = Class.forName("jdk.jfr.EventSettings");
+
+      settingsType.getMethod("withThreshold", Duration.class).invoke(settings, Duration.ofMillis(thresholdMillis));
+      settingsType.getMethod("withStackTrace").invoke(settings);
+      streamType.getMethod("onEvent", String.class, Consumer.class).invoke(stream, EVENT, (Consumer<Object>) this::onPinned);
+      streamType.getMethod("startAsync").invoke(stream);
+
+      this.stream = stream;
+      return true;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOGGER.warn("Virtual thread pinning is not monitored, no JFR event streaming : {}", e.toString());
+      return false;
+    }
+  }
+
+  public void stop() {
+    if (stream != null) {
+      try {
+        stream.getClass().getMethod("close").invoke(stream);
+      } catch (ReflectiveOperationException e) {
+        LOGGER.debug("Closing the pinning stream failed", e);
+      }
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("threads.virtual.pinned", pinned.sum()));
+    metrics.add(new Metric<Long>("threads.virtual.pinned.millis", pinnedMillis.sum()));
+    metrics.add(new Metric<Integer>("threads.virtual.pinned.sites", sites.size()));
+
+    return metrics;
+  }
+
+  private void onPinned(Object event) {
+    try {
+      Duration duration = (Duration) invoke(event, "getDuration");
+      String stack = stack(event);
+
+      pinned.increment();
+      pinnedMillis.add(duration.toMillis());
+
+      if (sites.size() < MAX_SITES && sites.add(stack)) {
+        LOGGER.warn("Virtual thread pinned for {}ms at\n{}", duration.toMillis(), stack);
+      }
+    } catch (ReflectiveOperationException e) {
+      LOGGER.debug("Unreadable pinning event", e);
+    }
+  }
+
+  private String stack(Object event) throws ReflectiveOperationException {
+    Object stackTrace = invoke(event, "getStackTrace");
+
+    if (stackTrace == null) {
+      return "  (no stack)";
+    }
+
+    StringBuilder stack = new StringBuilder();
+    List<?> frames = (List<?>) invoke(stackTrace, "getFrames");
+
+    for (Object frame : frames.subList(0, Math.min(stackDepth, frames.size()))) {
+      Object method = invoke(frame, "getMethod");
+
+      stack.append("  at ").append(invoke(invoke(method, "getType"), "getName"))
+          .append('.').append(invoke(method, "getName"))
+          .append(':').append(invoke(frame, "getLineNumber")).append('\n');
+    }
+    return stack.toString();
+  }
+
+  private static Object invoke(Object target, String name) throws ReflectiveOperationException {
+    return target.getClass().getMethod(name).invoke(target);
+  }
+
+  private static final String EVENT = "jdk.VirtualThreadPinned";
+  private static final int MAX_SITES = 1000;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PinningMonitor.class);
+
+  private final long thresholdMillis;
+  private final int stackDepth;
+  private final LongAdder pinned = new LongAdder();
+  private final LongAdder pinnedMillis = new LongAdder();
+  private final Set<String> sites = ConcurrentHashMap.newKeySet();
+  private volatile Object stream;
+}
@@ -0,0 +1,72 @@
+package org.leo.boot.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Virtual threads (JDK 21) reached through reflection, the sources are built for Java 8
+ * @author fahdessid
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+  }
+
+  /**
+   * True if the running JVM creates virtual threads without --enable-preview
+   */
+  public static boolean isSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Executor starting a new virtual thread per task, null if the JVM has no virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      return null;
+    }
+
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Virtual threads executor not available", e);
+    }
+  }
+
+  public static boolean isVirtual(Thread thread) {
+    try {
+      return IS_VIRTUAL != null && (Boolean) IS_VIRTUAL.invoke(thread);
+    } catch (ReflectiveOperationException e) {
+      return false;
+    }
+  }
+
+  private static Method lookup(Class<?> type, String name) {
+    try {
+      return type.getMethod(name);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * In preview (JDK 19, 20) the method exists but fails, it is tried once here
+   */
+  private static Method probe(Method method) {
+    if (method == null) {
+      return null;
+    }
+
+    try {
+      ((ExecutorService) method.invoke(null)).shutdown();
+      return method;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      return null;
+    }
+  }
+
+  private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR =
+      probe(lookup(java.util.concurrent.Executors.class, "newVirtualThreadPerTaskExecutor"));
+  private static final Method IS_VIRTUAL = lookup(Thread.class, "isVirtual");
+}
@@ -0,0 +1,152 @@
+package org.leo.boot.configuration;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.leo.boot.concurrent.Bulkhead;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Bulkheads per route group, so that in one process a slow MongoDB behind /item/** cannot take the threads of the logins
+ * The groups are listed in bulkhead.groups, tried in that order, each one with
+ * bulkhead.{group}.paths (ant patterns), max-concurrent, max-queued, queue-timeout-ms and the rejection response :
+ * rejection-status and retry-after-seconds
+ * The sum of max-concurrent + max-queued of the groups should not exceed server.tomcat.max-threads
+ * Enabled with bulkhead.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "bulkhead.enabled", havingValue = "true")
+public class BulkheadConfiguration {
+
+  /**
+   * Called by the other bean methods, a Map parameter would be resolved as the map of the Bulkhead beans
+   */
+  @Bean
+  public Map<String, Bulkhead> bulkheads() {
+    Map<String, Bulkhead> bulkheads = new LinkedHashMap<String, Bulkhead>();
+
+    for (String group : StringUtils.commaDelimitedListToStringArray(environment.getRequiredProperty("bulkhead.groups"))) {
+      bulkheads.put(group, new Bulkhead(group,
+          environment.getRequiredProperty("bulkhead." + group + ".max-concurrent", Integer.class),
+          environment.getProperty("bulkhead." + group + ".max-queued", Integer.class, 0),
+          environment.getProperty("bulkhead." + group + ".queue-timeout-ms", Long.class, 0L)));
+    }
+    return bulkheads;
+  }
+
+  @Bean
+  public PublicMetrics bulkheadMetrics() {
+    return () -> {
+      List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+      bulkheads().values().forEach(bulkhead -> metrics.addAll(bulkhead.metrics()));
+      return metrics;
+    };
+  }
+
+  /**
+   * Before the security filters : a rejected request costs nothing
+   */
+  @Bean
+  public FilterRegistrationBean bulkheadFilter() {
+    List<Route> routes = new ArrayList<Route>();
+
+    for (Bulkhead bulkhead : bulkheads().values()) {
+      String group = bulkhead.getName();
+
+      routes.add(new Route(bulkhead,
+          StringUtils.commaDelimitedListToStringArray(environment.getRequiredProperty("bulkhead." + group + ".paths")),
+          environment.getProperty("bulkhead." + group + ".rejection-status", Integer.class, HttpServletResponse.SC_SERVICE_UNAVAILABLE),
+          environment.getProperty("bulkhead." + group + ".retry-after-seconds", Integer.class, 1)));
+    }
+
+    FilterRegistrationBean registration = new FilterRegistrationBean(new OncePerRequestFilter() {
+
+      @Override
+      protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+          throws ServletException, IOException {
+        Route route = route(routes, request.getServletPath());
+
+        if (route == null) {
+          filterChain.doFilter(request, response);
+          return;
+        }
+
+        boolean entered;
+
+        try {
+          entered = route.bulkhead.tryEnter();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          entered = false;
+        }
+
+        if (!entered) {
+          response.setStatus(route.rejectionStatus);
+          response.setHeader("Retry-After", Integer.toString(route.retryAfterSeconds));
+          return;
+        }
+
+        try {
+          filterChain.doFilter(request, response);
+        } finally {
+          route.bulkhead.exit();
+        }
+      }
+    });
+
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 5);
+    return registration;
+  }
+
+  private static Route route(List<Route> routes, String path) {
+    for (Route route : routes) {
+      for (String pattern : route.patterns) {
+        if (PATH_MATCHER.match(pattern, path)) {
+          return route;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static final AntPathMatcher PATH_MATCHER = new AntPathMatcher();
+
+  @Autowired
+  private Environment environment;
+
+  private static final class Route {
+
+    Route(Bulkhead bulkhead, String[] patterns, int rejectionStatus, int retryAfterSeconds) {
+      this.bulkhead = bulkhead;
+      this.patterns = patterns;
+      this.rejectionStatus = rejectionStatus;
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    private final Bulkhead bulkhead;
+    private final String[] patterns;
+    private final int rejectionStatus;
+    private final int retryAfterSeconds;
+  }
+}
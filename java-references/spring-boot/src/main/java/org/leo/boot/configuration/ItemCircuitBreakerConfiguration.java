@@ -0,0 +1,103 @@
+package org.leo.boot.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.leo.boot.concurrent.CircuitBreaker;
+import org.leo.boot.data.repository.ItemRepository;
+import org.leo.boot.data.repository.ResilientItemRepository;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.mongodb.MongoException;
+
+/**
+ * Circuit breaker around every ItemRepository bean (the Spring Data one, the sharded one), named after the bean
+ * Stale reads are flagged on the HTTP response with a "Warning: 110" header, the state and the transitions of the
+ * circuits are published on /metrics (circuit.{bean}.*, state 0 closed, 1 open, 2 half open)
+ * The first calls to a MongoDB gone silent still wait the driver timeouts, until the circuit opens
+ * Enabled with items.circuit-breaker.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "items.circuit-breaker.enabled", havingValue = "true")
+public class ItemCircuitBreakerConfiguration {
+
+  /**
+   * Static, as a BeanPostProcessor is created before the other beans of this class
+   */
+  @Bean
+  public static BeanPostProcessor resilientItemRepositoryPostProcessor(Environment environment) {
+    return new BeanPostProcessor() {
+
+      @Override
+      public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+      }
+
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (!(bean instanceof ItemRepository) || bean instanceof ResilientItemRepository) {
+          return bean;
+        }
+
+        CircuitBreaker circuitBreaker = new CircuitBreaker(beanName,
+            environment.getProperty("items.circuit-breaker.window-size", Integer.class, 50),
+            environment.getProperty("items.circuit-breaker.minimum-calls", Integer.class, 20),
+            environment.getProperty("items.circuit-breaker.failure-rate", Integer.class, 50),
+            environment.getProperty("items.circuit-breaker.slow-call-ms", Long.class, 1000L),
+            environment.getProperty("items.circuit-breaker.slow-call-rate", Integer.class, 50),
+            environment.getProperty("items.circuit-breaker.open-ms", Long.class, 10000L),
+            environment.getProperty("items.circuit-breaker.half-open-calls", Integer.class, 3),
+            ItemCircuitBreakerConfiguration::isMongoFailure);
+
+        return new ResilientItemRepository((ItemRepository) bean, circuitBreaker,
+            environment.getProperty("items.circuit-breaker.stale-entries", Long.class, 10000L),
+            ItemCircuitBreakerConfiguration::flagStaleResponse);
+      }
+    };
+  }
+
+  @Bean
+  public PublicMetrics itemCircuitBreakerMetrics(ListableBeanFactory beanFactory) {
+    return () -> {
+      List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+      for (ItemRepository repository : beanFactory.getBeansOfType(ItemRepository.class).values()) {
+        if (repository instanceof ResilientItemRepository) {
+          metrics.addAll(((ResilientItemRepository) repository).metrics());
+        }
+      }
+      return metrics;
+    };
+  }
+
+  /**
+   * The backend failing, not the query : the driver could not reach MongoDB, timed out, or the operation may succeed
+   * if retried
+   */
+  private static boolean isMongoFailure(Throwable e) {
+    return e instanceof DataAccessResourceFailureException || e instanceof TransientDataAccessException
+        || e instanceof MongoException;
+  }
+
+  private static void flagStaleResponse() {
+    RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+
+    if (attributes instanceof ServletRequestAttributes && ((ServletRequestAttributes) attributes).getResponse() != null) {
+      ((ServletRequestAttributes) attributes).getResponse().setHeader("Warning", "110 - \"Response is Stale\"");
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package org.leo.boot.configuration;
+
+import org.leo.boot.data.mongo.ItemCodecMongoConverter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.convert.CustomConversions;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+/**
+ * Items read and written by the hand written ItemCodec instead of the reflective mapping
+ * The converter replaces the one of the MongoDB auto-configuration, MongoTemplate and the repositories then use it
+ * Enabled with items.codec.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "items.codec.enabled", havingValue = "true")
+public class ItemCodecConfiguration {
+
+  /**
+   * Built as the auto-configuration builds its own
+   */
+  @Bean
+  public MappingMongoConverter mappingMongoConverter(MongoDbFactory factory, MongoMappingContext context,
+      CustomConversions conversions) {
+    MappingMongoConverter converter = new ItemCodecMongoConverter(new DefaultDbRefResolver(factory), context);
+
+    converter.setCustomConversions(conversions);
+    return converter;
+  }
+}
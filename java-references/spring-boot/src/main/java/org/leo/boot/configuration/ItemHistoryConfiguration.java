@@ -0,0 +1,51 @@
+package org.leo.boot.configuration;
+
+import org.leo.boot.data.history.ItemHistory;
+import org.leo.boot.data.model.Item;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+
+/**
+ * Quantity and rank history of the items, in hourly buckets of the item_history collection, read by the
+ * ItemHistoryController. Saved items, ranks and quantity adjustments of ItemRepositoryImpl are recorded
+ * The history writer is published on /metrics (items.history.*)
+ * Enabled with items.history.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "items.history.enabled", havingValue = "true")
+public class ItemHistoryConfiguration {
+
+  @Bean(initMethod = "start", destroyMethod = "close")
+  public ItemHistory itemHistory(MongoTemplate mongoTemplate) {
+    return new ItemHistory(mongoTemplate, queueCapacity, maxBulkSize, maxBucketSamples, maxRangeBuckets);
+  }
+
+  @Bean
+  public AbstractMongoEventListener<Item> itemHistoryListener(ItemHistory itemHistory) {
+    return new AbstractMongoEventListener<Item>() {
+
+      @Override
+      public void onAfterSave(AfterSaveEvent<Item> event) {
+        itemHistory.record(event.getSource().getId(), event.getSource().getQuantity(), null);
+      }
+    };
+  }
+
+  @Value("${items.history.queue-capacity:100000}")
+  private int queueCapacity;
+
+  @Value("${items.history.max-bulk-size:1000}")
+  private int maxBulkSize;
+
+  @Value("${items.history.max-bucket-samples:1000}")
+  private int maxBucketSamples;
+
+  @Value("${items.history.max-range-buckets:744}")
+  private int maxRangeBuckets;
+}
@@ -0,0 +1,105 @@
+package org.leo.boot.configuration;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.leo.boot.data.repository.ItemRepository;
+import org.leo.boot.data.repository.ShardedItemRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+
+/**
+ * Client side sharding of items_collection over several MongoDB instances
+ * Enabled with items.sharding.enabled=true, the sharded repository then replaces the Spring Data one in the ItemController
+ * After a shard is added to items.sharding.uris, start once with items.sharding.rebalance-on-startup=true to move the
+ * items it now owns
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "items.sharding.enabled", havingValue = "true")
+public class ItemShardingConfiguration {
+
+  /**
+   * Primary so it is injected instead of the single instance repository generated by @EnableMongoRepositories
+   */
+  @Bean
+  @Primary
+  public ItemRepository shardedItemRepository() {
+    ShardedItemRepository repository = new ShardedItemRepository(virtualNodes, itemShardsExecutor());
+
+    for (Map.Entry<MongoClientURI, MongoClient> shard : itemShardClients().clients.entrySet()) {
+      MongoClientURI clientUri = shard.getKey();
+      // the converter of the main template, so the shards map items the same way (Item has no DBRef to resolve)
+      repository.addShard(clientUri.getHosts() + "/" + clientUri.getDatabase(),
+          new MongoTemplate(new SimpleMongoDbFactory(shard.getValue(), clientUri.getDatabase()), mongoConverter));
+    }
+
+    if (rebalanceOnStartup) {
+      LOGGER.info("{} items moved to the shard owning them", repository.rebalance());
+    }
+
+    return repository;
+  }
+
+  /**
+   * The shard clients, closed with the context
+   */
+  @Bean(destroyMethod = "close")
+  public ShardClients itemShardClients() {
+    ShardClients shardClients = new ShardClients();
+
+    for (String uri : uris) {
+      MongoClientURI clientUri = new MongoClientURI(uri.trim());
+      shardClients.clients.put(clientUri, new MongoClient(clientUri));
+    }
+
+    return shardClients;
+  }
+
+  /**
+   * One thread per shard so a fan out query waits for the slowest shard only
+   */
+  @Bean(destroyMethod = "shutdown")
+  public ExecutorService itemShardsExecutor() {
+    return Executors.newFixedThreadPool(uris.length);
+  }
+
+  public static class ShardClients {
+
+    public void close() {
+      for (MongoClient client : clients.values()) {
+        client.close();
+      }
+    }
+
+    private final Map<MongoClientURI, MongoClient> clients = new LinkedHashMap<MongoClientURI, MongoClient>();
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ItemShardingConfiguration.class);
+
+  @Autowired
+  private MongoConverter mongoConverter;
+
+  @Value("${items.sharding.uris}")
+  private String[] uris;
+
+  @Value("${items.sharding.virtual-nodes:160}")
+  private int virtualNodes;
+
+  @Value("${items.sharding.rebalance-on-startup:false}")
+  private boolean rebalanceOnStartup;
+}
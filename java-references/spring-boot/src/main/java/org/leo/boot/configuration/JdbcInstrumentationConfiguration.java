@@ -0,0 +1,81 @@
+package org.leo.boot.configuration;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.leo.boot.data.jdbc.InstrumentedDataSource;
+import org.leo.boot.data.jdbc.JdbcStatistics;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * JDBC instrumentation : every DataSource bean is wrapped to time the SQL it executes,
+ * and a servlet filter delimits HTTP requests to count their queries and spot N+1 patterns
+ * The results are published on the actuator /metrics endpoint
+ * Enabled with jdbc.instrumentation.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "jdbc.instrumentation.enabled", havingValue = "true")
+public class JdbcInstrumentationConfiguration {
+
+  @Bean
+  public JdbcStatistics jdbcStatistics(Environment environment) {
+    return new JdbcStatistics(environment.getProperty("jdbc.instrumentation.n-plus-one-threshold", Integer.class, 5),
+        environment.getProperty("jdbc.instrumentation.reported-statements", Integer.class, 50));
+  }
+
+  /**
+   * Static, as a BeanPostProcessor is created before the other beans of this class, the statistics are looked up lazily
+   */
+  @Bean
+  public static BeanPostProcessor instrumentedDataSourcePostProcessor(ObjectFactory<JdbcStatistics> jdbcStatistics) {
+    return new BeanPostProcessor() {
+
+      @Override
+      public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+      }
+
+      @Override
+      public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean instanceof DataSource ? InstrumentedDataSource.wrap((DataSource) bean, jdbcStatistics.getObject()) : bean;
+      }
+    };
+  }
+
+  @Bean
+  public FilterRegistrationBean jdbcRequestFilter(JdbcStatistics jdbcStatistics) {
+    FilterRegistrationBean registration = new FilterRegistrationBean(new OncePerRequestFilter() {
+
+      @Override
+      protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+          throws ServletException, IOException {
+        jdbcStatistics.beginRequest();
+
+        try {
+          filterChain.doFilter(request, response);
+        } finally {
+          jdbcStatistics.endRequest(request.getRequestURI());
+        }
+      }
+    });
+
+    // first filter, so the queries of the security filter chain are counted too
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+    return registration;
+  }
+}
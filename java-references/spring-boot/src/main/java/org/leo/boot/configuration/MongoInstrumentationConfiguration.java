@@ -0,0 +1,63 @@
+package org.leo.boot.configuration;
+
+import java.util.List;
+
+import org.leo.boot.data.mongo.MongoCommandStatistics;
+import org.leo.boot.data.mongo.SlowOperation;
+import org.springframework.beans.factory.ObjectFactory;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.boot.actuate.endpoint.Endpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+
+/**
+ * MongoDB instrumentation : the driver reports every command (MongoTemplate and repository operations) to a command
+ * listener timing them per query shape, the slow ones are logged, explained and kept for the actuator /slowqueries endpoint
+ * The latencies are published on the actuator /metrics endpoint
+ * Enabled with mongo.instrumentation.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "mongo.instrumentation.enabled", havingValue = "true")
+public class MongoInstrumentationConfiguration {
+
+  /**
+   * The client is looked up lazily, it is built with the options holding these statistics
+   */
+  @Bean(destroyMethod = "close")
+  public MongoCommandStatistics mongoCommandStatistics(Environment environment, ObjectFactory<MongoClient> mongoClient) {
+    return new MongoCommandStatistics(environment.getProperty("mongo.instrumentation.slow-threshold-ms", Long.class, 100L),
+        environment.getProperty("mongo.instrumentation.slow-capacity", Integer.class, 100),
+        environment.getProperty("mongo.instrumentation.reported-shapes", Integer.class, 50),
+        mongoClient::getObject);
+  }
+
+  /**
+   * Picked up by the MongoDB auto-configuration to build the MongoClient
+   */
+  @Bean
+  public MongoClientOptions mongoClientOptions(MongoCommandStatistics mongoCommandStatistics) {
+    return MongoClientOptions.builder().addCommandListener(mongoCommandStatistics).build();
+  }
+
+  /**
+   * Sensitive, like /metrics, unless endpoints.slowqueries.sensitive=false
+   */
+  @Bean
+  @ConfigurationProperties(prefix = "endpoints.slowqueries")
+  public Endpoint<List<SlowOperation>> slowQueriesEndpoint(MongoCommandStatistics mongoCommandStatistics) {
+    return new AbstractEndpoint<List<SlowOperation>>("slowqueries") {
+
+      @Override
+      public List<SlowOperation> invoke() {
+        return mongoCommandStatistics.getSlowOperations();
+      }
+    };
+  }
+}
@@ -0,0 +1,41 @@
+package org.leo.boot.configuration;
+
+import org.leo.boot.mvc.RenderedPageCacheFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Production rendering of the anonymous pages : they are served from a byte cache
+ * Enabled with pages.cache.enabled=true, which the prod profile does along with the Thymeleaf template cache
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "pages.cache.enabled", havingValue = "true")
+public class PageCacheConfiguration {
+
+  /**
+   * Mapped on the permitAll pages only, and placed after the security filter chain (security.filter-order is left
+   * to its default) : a cached page still gets the security headers (X-Frame-Options, Cache-Control...)
+   */
+  @Bean
+  public FilterRegistrationBean renderedPageCacheFilter() {
+    FilterRegistrationBean registration = new FilterRegistrationBean(new RenderedPageCacheFilter(maximumPages, ttlSeconds, parameters));
+
+    registration.addUrlPatterns("/", "/login", "/registration");
+    registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER + 1);
+    return registration;
+  }
+
+  @Value("${pages.cache.maximum-pages:100}")
+  private long maximumPages;
+
+  @Value("${pages.cache.ttl-seconds:3600}")
+  private long ttlSeconds;
+
+  @Value("${pages.cache.parameters:error}")
+  private String[] parameters;
+}
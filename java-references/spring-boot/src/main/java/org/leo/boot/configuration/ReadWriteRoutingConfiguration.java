@@ -0,0 +1,130 @@
+package org.leo.boot.configuration;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.leo.boot.data.jdbc.ReadWriteRoutingDataSource;
+import org.leo.boot.data.jdbc.ReadYourWrites;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceBuilder;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Read / write split of the MySQL traffic : read only transactions go to a replica, writes to the primary (spring.datasource.*)
+ * The DataSource auto configuration backs off, this DataSource replaces it
+ * Enabled with datasource.routing.enabled=true
+ *
+ * To try it locally, start a second MySQL on another port replicating the first one
+ * (or a plain copy of test_db, the routing does not need real replication) and set datasource.routing.replica.*
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.routing.enabled", havingValue = "true")
+public class ReadWriteRoutingConfiguration {
+
+  @Bean
+  @Primary
+  public DataSource dataSource(DataSourceProperties properties, Environment environment) {
+    org.apache.tomcat.jdbc.pool.DataSource primary = pool(properties.getUrl(), properties.getUsername(),
+        properties.getPassword(), environment.getProperty("datasource.routing.primary.max-active", Integer.class, 100));
+    org.apache.tomcat.jdbc.pool.DataSource replica = pool(environment.getRequiredProperty("datasource.routing.replica.url"),
+        environment.getProperty("datasource.routing.replica.username", properties.getUsername()),
+        environment.getProperty("datasource.routing.replica.password", properties.getPassword()),
+        environment.getProperty("datasource.routing.replica.max-active", Integer.class, 100));
+
+    ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica,
+        environment.getProperty("datasource.routing.sticky-ms", Long.class, 5000L));
+    routing.afterPropertiesSet();
+
+    return new LazyConnectionDataSourceProxy(routing);
+  }
+
+  /**
+   * The routing DataSource is reached through unwrap, the DataSource bean may be wrapped by the jdbc instrumentation
+   */
+  @Bean
+  public PublicMetrics readWriteRoutingMetrics(DataSource dataSource) throws SQLException {
+    return dataSource.unwrap(ReadWriteRoutingDataSource.class)::metrics;
+  }
+
+  /**
+   * Carries the read-your-writes deadline between the requests of a client in a cookie, no http session needed
+   * A forged cookie can only send more reads to the primary, its value is capped to the sticky delay anyway
+   */
+  @Bean
+  public FilterRegistrationBean readYourWritesFilter(Environment environment) {
+    long stickyMillis = environment.getProperty("datasource.routing.sticky-ms", Long.class, 5000L);
+
+    FilterRegistrationBean registration = new FilterRegistrationBean(new OncePerRequestFilter() {
+
+      @Override
+      protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+          throws ServletException, IOException {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE);
+        long primaryUntil = 0;
+
+        if (cookie != null) {
+          try {
+            primaryUntil = Math.min(Long.parseLong(cookie.getValue()), System.currentTimeMillis() + stickyMillis);
+          } catch (NumberFormatException e) {
+            // ignored, reads go to the replica
+          }
+        }
+
+        ReadYourWrites.begin(primaryUntil, newPrimaryUntil -> {
+          if (!response.isCommitted()) {
+            Cookie sticky = new Cookie(COOKIE, Long.toString(newPrimaryUntil));
+
+            sticky.setPath("/");
+            sticky.setHttpOnly(true);
+            sticky.setMaxAge((int) TimeUnit.MILLISECONDS.toSeconds(stickyMillis) + 1);
+            response.addCookie(sticky);
+          }
+        });
+
+        try {
+          filterChain.doFilter(request, response);
+        } finally {
+          ReadYourWrites.end();
+        }
+      }
+    });
+
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+    return registration;
+  }
+
+  private static org.apache.tomcat.jdbc.pool.DataSource pool(String url, String username, String password, int maxActive) {
+    org.apache.tomcat.jdbc.pool.DataSource pool = (org.apache.tomcat.jdbc.pool.DataSource) DataSourceBuilder.create()
+        .type(org.apache.tomcat.jdbc.pool.DataSource.class)
+        .url(url)
+        .username(username)
+        .password(password)
+        .build();
+
+    pool.setMaxActive(maxActive);
+    pool.setTestWhileIdle(true);
+    pool.setValidationQuery("SELECT 1");
+    return pool;
+  }
+
+  private static final String COOKIE = "PRIMARY_UNTIL";
+}
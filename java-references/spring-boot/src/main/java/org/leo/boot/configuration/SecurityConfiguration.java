@@ -1,16 +1,25 @@
 package org.leo.boot.configuration;
 
-import javax.sql.DataSource;
+import java.util.Base64;
 
+import org.leo.boot.data.service.CachedUserDetailsService;
+import org.leo.boot.security.LoginThrottle;
+import org.leo.boot.security.PathTrieRequestMatchers;
+import org.leo.boot.security.SignedTokenService;
+import org.leo.boot.security.TokenAuthenticationFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.builders.WebSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.savedrequest.NullRequestCache;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 
 /**
@@ -24,49 +33,108 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter {
 
   @Override
   protected void configure(AuthenticationManagerBuilder auth) throws Exception {
+    // same users and roles queries than jdbcAuthentication(), behind a cache
     auth.
-    jdbcAuthentication()
-    .usersByUsernameQuery(usersQuery)
-    .authoritiesByUsernameQuery(rolesQuery)
-    .dataSource(dataSource)
-    .passwordEncoder(bCryptPasswordEncoder);
+    userDetailsService(userDetailsService)
+    .passwordEncoder(passwordEncoder);
   }
 
+  /**
+   * The path rules share one PathTrie, the first matching rule is found once per request instead of trying every
+   * ant matcher in turn, see SecurityMatcherBenchmark
+   */
   @Override
   protected void configure(HttpSecurity http) throws Exception {
+    PathTrieRequestMatchers rules = new PathTrieRequestMatchers();
+
+    if (publicPaths.length > 0) {
+      // the rest api when it runs in the same process, see SpringBootCombinedExample
+      http.authorizeRequests().requestMatchers(rules.matcher(publicPaths)).permitAll();
+    }
+
     http.
     authorizeRequests()
-    .antMatchers("/").permitAll()
-    .antMatchers("/login").permitAll()
-    .antMatchers("/registration").permitAll()
-    .antMatchers("/admin/**").hasAuthority("ADMIN").anyRequest()
+    .requestMatchers(rules.matcher("/", "/login", "/registration")).permitAll()
+    .requestMatchers(rules.matcher("/admin/**")).hasAuthority("ADMIN").anyRequest()
     .authenticated().and().csrf().disable()
-    .formLogin().loginPage("/login").failureUrl("/login?error=true")
+    .formLogin().loginPage("/login").failureHandler(loginThrottle().failureHandler())
     .defaultSuccessUrl("/admin/home")
     .usernameParameter("email")
     .passwordParameter("password")
     .and().logout()
     .logoutRequestMatcher(new AntPathRequestMatcher("/logout"))
     .logoutSuccessUrl("/").and().exceptionHandling()
-    .accessDeniedPage("/access-denied");
+    .accessDeniedPage("/access-denied")
+    .and().addFilterBefore(loginThrottle().filter(), UsernamePasswordAuthenticationFilter.class);
+
+    if (statelessTokens) {
+      // no server side session : the user id and authorities travel in a signed cookie checked by every node
+      http.
+      sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+      .and().requestCache().requestCache(new NullRequestCache())
+      .and().formLogin().successHandler(TokenAuthenticationFilter.issuingTokenCookie(signedTokenService(), "/admin/home"))
+      .and().logout().deleteCookies(TokenAuthenticationFilter.COOKIE_NAME)
+      .and().addFilterBefore(new TokenAuthenticationFilter(signedTokenService()), UsernamePasswordAuthenticationFilter.class);
+    }
+  }
+
+  /**
+   * Failed logins counted per IP and per email, over the threshold the login is refused before the password check
+   */
+  @Bean
+  public LoginThrottle loginThrottle() {
+    return new LoginThrottle(maxFailuresPerIp, maxFailuresPerEmail, throttleWindowSeconds, throttleExpectedFailures,
+        "/login", "/login?error=true");
+  }
+
+  /**
+   * Every node must be configured with the same auth.token.secret (base64) to accept each other's tokens,
+   * the stateless mode refuses to start without it
+   */
+  @Bean
+  public SignedTokenService signedTokenService() {
+    if (statelessTokens && tokenSecret.trim().isEmpty()) {
+      throw new IllegalStateException("auth.token.stateless=true requires auth.token.secret, the same base64 key on every node");
+    }
+
+    return new SignedTokenService(Base64.getDecoder().decode(tokenSecret), tokenTtlSeconds);
   }
 
   @Override
   public void configure(WebSecurity web) throws Exception {
+    // one ignored chain for all the static paths, instead of one chain per pattern checked by every request
     web
     .ignoring()
-    .antMatchers("/resources/**", "/static/**", "/css/**", "/js/**", "/images/**");
+    .requestMatchers(new PathTrieRequestMatchers().matcher("/resources/**", "/static/**", "/css/**", "/js/**", "/images/**"));
   }
   
   @Autowired
-  private BCryptPasswordEncoder bCryptPasswordEncoder;
+  private PasswordEncoder passwordEncoder;
+
+  @Value("${access.public-paths:}")
+  private String[] publicPaths;
 
   @Autowired
-  private DataSource dataSource;
+  private CachedUserDetailsService userDetailsService;
+
+  @Value("${login.throttle.max-failures-per-ip:50}")
+  private int maxFailuresPerIp;
+
+  @Value("${login.throttle.max-failures-per-email:10}")
+  private int maxFailuresPerEmail;
+
+  @Value("${login.throttle.window-seconds:300}")
+  private long throttleWindowSeconds;
+
+  @Value("${login.throttle.expected-failures:100000}")
+  private long throttleExpectedFailures;
+
+  @Value("${auth.token.stateless:false}")
+  private boolean statelessTokens;
 
-  @Value("${spring.queries.users-query}")
-  private String usersQuery;
+  @Value("${auth.token.secret:}")
+  private String tokenSecret;
 
-  @Value("${spring.queries.roles-query}")
-  private String rolesQuery;
+  @Value("${auth.token.ttl-seconds:3600}")
+  private long tokenTtlSeconds;
 }
@@ -0,0 +1,87 @@
+package org.leo.boot.configuration;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.leo.boot.mvc.AssetHttpRequestHandler;
+import org.leo.boot.mvc.PrecompressedResourceResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.servlet.resource.CachingResourceResolver;
+import org.springframework.web.servlet.resource.PathResourceResolver;
+import org.springframework.web.servlet.resource.ResourceUrlEncodingFilter;
+import org.springframework.web.servlet.resource.VersionResourceResolver;
+
+/**
+ * Static assets pipeline : css, images, js and the angular bundle are served under fingerprinted urls
+ * (the md5 of the content is added to the file name), with their precompressed variants, and cached a year by the browsers
+ * The template links (th:href="@{/css/login.css}") are rewritten to the fingerprinted urls by the ResourceUrlEncodingFilter
+ * Web applications only : non web contexts of the same package (SecondLevelCacheBenchmark) have no ServletContext
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnWebApplication
+public class StaticResourcesConfiguration {
+
+  /**
+   * Ordered after the controllers and before the default /** static mapping of spring boot
+   */
+  @Bean
+  public SimpleUrlHandlerMapping staticAssetsHandlerMapping() throws Exception {
+    Map<String, Object> handlers = new LinkedHashMap<String, Object>();
+
+    for (String folder : FOLDERS) {
+      handlers.put("/" + folder + "/**", assetHandler("classpath:/static/" + folder + "/"));
+    }
+
+    SimpleUrlHandlerMapping mapping = new SimpleUrlHandlerMapping();
+    mapping.setUrlMap(handlers);
+    mapping.setOrder(1);
+    return mapping;
+  }
+
+  @Bean
+  public FilterRegistrationBean resourceUrlEncodingFilter() {
+    FilterRegistrationBean registration = new FilterRegistrationBean(new ResourceUrlEncodingFilter());
+
+    registration.addUrlPatterns("/*");
+    return registration;
+  }
+
+  /**
+   * Same setup as a ResourceHandlerRegistry registration, with our handler class
+   * The precompressed variants are resolved above the cached resolution, see PrecompressedResourceResolver
+   */
+  private AssetHttpRequestHandler assetHandler(String location) throws Exception {
+    AssetHttpRequestHandler handler = new AssetHttpRequestHandler();
+
+    handler.setLocations(Collections.singletonList(applicationContext.getResource(location)));
+    handler.setResourceResolvers(Arrays.asList(
+        new PrecompressedResourceResolver(),
+        new CachingResourceResolver(new ConcurrentMapCache("static-assets-" + location)),
+        new VersionResourceResolver().addContentVersionStrategy("/**"),
+        new PathResourceResolver()));
+    handler.setApplicationContext(applicationContext);
+    handler.setServletContext(servletContext);
+    handler.afterPropertiesSet();
+    return handler;
+  }
+
+  private static final String[] FOLDERS = {"css", "images", "js", "angular"};
+
+  @Autowired
+  private ApplicationContext applicationContext;
+
+  @Autowired
+  private ServletContext servletContext;
+}
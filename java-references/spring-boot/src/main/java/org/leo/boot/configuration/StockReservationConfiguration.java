@@ -0,0 +1,72 @@
+package org.leo.boot.configuration;
+
+import org.leo.boot.data.model.Item;
+import org.leo.boot.data.repository.ItemRepository;
+import org.leo.boot.data.repository.ResilientItemRepository;
+import org.leo.boot.data.reservation.StockReservations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * In memory stock reservations on Item.quantity, flushed to MongoDB in batches
+ * The counters are owned by this node : enable it on a single instance, the others would sell the same stock
+ * Enabled with items.reservation.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "items.reservation.enabled", havingValue = "true")
+public class StockReservationConfiguration {
+
+  /**
+   * flush is also called on shutdown so confirmed sales are not lost
+   * The stock is never loaded from a stale read of the circuit breaker, it could oversell
+   */
+  @Bean(destroyMethod = "flush")
+  public StockReservations stockReservations() {
+    return new StockReservations(itemId -> {
+      Item item = ResilientItemRepository.fresh(() -> itemRepository.findOne(itemId));
+      return item != null ? item.getQuantity() : null;
+    }, (flushId, deltas) -> itemRepository.adjustQuantities(deltas, flushId), stripes, reservationTtlMillis);
+  }
+
+  /**
+   * A saved item (PUT /item/{id}...) gives the stock of its counter
+   */
+  @Bean
+  public AbstractMongoEventListener<Item> stockReservationsListener() {
+    return new AbstractMongoEventListener<Item>() {
+
+      @Override
+      public void onAfterSave(AfterSaveEvent<Item> event) {
+        stockReservations().reload(event.getSource().getId(), event.getSource().getQuantity());
+      }
+    };
+  }
+
+  @Scheduled(fixedDelayString = "${items.reservation.flush-interval-ms:500}")
+  public void flushReservations() {
+    stockReservations().flush();
+  }
+
+  @Scheduled(fixedDelayString = "${items.reservation.expiry-check-interval-ms:10000}")
+  public void releaseExpiredReservations() {
+    stockReservations().releaseExpired();
+  }
+
+  @Autowired
+  private ItemRepository itemRepository;
+
+  @Value("${items.reservation.stripes:8}")
+  private int stripes;
+
+  @Value("${items.reservation.ttl-ms:900000}")
+  private long reservationTtlMillis;
+}
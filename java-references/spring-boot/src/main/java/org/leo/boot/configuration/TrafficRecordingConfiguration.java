@@ -0,0 +1,58 @@
+package org.leo.boot.configuration;
+
+import java.io.File;
+
+import org.leo.boot.rest.traffic.TrafficRecorder;
+import org.leo.boot.rest.traffic.TrafficRecordingFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Records a sample of the item api traffic to a binary log, replayed on a test instance by the TrafficReplayer
+ * The recorder is published on /metrics (recorded, dropped, bytes)
+ * Enabled with traffic.recording.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "traffic.recording.enabled", havingValue = "true")
+public class TrafficRecordingConfiguration {
+
+  @Bean(initMethod = "start", destroyMethod = "close")
+  public TrafficRecorder trafficRecorder() {
+    return new TrafficRecorder(new File(directory), maxMegabytes * 1024 * 1024, queueCapacity);
+  }
+
+  /**
+   * Before the bulkheads, so the rejected requests are part of the recorded traffic
+   */
+  @Bean
+  public FilterRegistrationBean trafficRecordingFilter() {
+    FilterRegistrationBean registration = new FilterRegistrationBean(new TrafficRecordingFilter(trafficRecorder(), sampleRate, maxBodyBytes));
+
+    registration.addUrlPatterns(urlPatterns);
+    registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+    return registration;
+  }
+
+  @Value("${traffic.recording.directory:traffic}")
+  private String directory;
+
+  @Value("${traffic.recording.url-patterns:/item/*}")
+  private String[] urlPatterns;
+
+  @Value("${traffic.recording.sample-rate:0.1}")
+  private double sampleRate;
+
+  @Value("${traffic.recording.max-body-bytes:16384}")
+  private int maxBodyBytes;
+
+  @Value("${traffic.recording.max-megabytes:512}")
+  private long maxMegabytes;
+
+  @Value("${traffic.recording.queue-capacity:10000}")
+  private int queueCapacity;
+}
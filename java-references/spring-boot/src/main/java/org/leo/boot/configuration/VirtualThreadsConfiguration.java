@@ -0,0 +1,76 @@
+package org.leo.boot.configuration;
+
+import java.util.concurrent.ExecutorService;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.coyote.AbstractProtocol;
+import org.leo.boot.concurrent.PinningMonitor;
+import org.leo.boot.concurrent.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerCustomizer;
+import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Virtual thread request execution : Tomcat hands every request to a new virtual thread instead of its worker pool,
+ * so a request blocked on MongoDB or MySQL no longer holds one of server.tomcat.max-threads platform threads
+ * The concurrency is then bounded by the connection pools and server.tomcat.max-connections
+ * Enabled with virtual-threads.enabled=true, on a JVM without virtual threads (before JDK 21) the worker pool is kept
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadsConfiguration {
+
+  @Bean
+  public EmbeddedServletContainerCustomizer virtualThreadsCustomizer() {
+    return container -> {
+      if (!VirtualThreads.isSupported()) {
+        LOGGER.warn("virtual-threads.enabled is set but this JVM ({}) has no virtual threads, the Tomcat thread pool is used",
+            System.getProperty("java.version"));
+        return;
+      }
+
+      if (container instanceof TomcatEmbeddedServletContainerFactory) {
+        requestExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        ((TomcatEmbeddedServletContainerFactory) container).addConnectorCustomizers(
+            connector -> ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(requestExecutor));
+      }
+    };
+  }
+
+  @Bean(destroyMethod = "stop")
+  public PinningMonitor pinningMonitor() {
+    PinningMonitor pinningMonitor = new PinningMonitor(pinningThresholdMillis, pinningStackDepth);
+
+    if (VirtualThreads.isSupported()) {
+      pinningMonitor.start();
+    }
+    return pinningMonitor;
+  }
+
+  /**
+   * Tomcat only shuts down the executors it creates
+   */
+  @PreDestroy
+  public void shutdown() {
+    if (requestExecutor != null) {
+      requestExecutor.shutdown();
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreadsConfiguration.class);
+
+  private volatile ExecutorService requestExecutor;
+
+  @Value("${virtual-threads.pinning.threshold-ms:20}")
+  private long pinningThresholdMillis;
+
+  @Value("${virtual-threads.pinning.stack-depth:12}")
+  private int pinningStackDepth;
+}
@@ -0,0 +1,40 @@
+package org.leo.boot.configuration;
+
+import java.util.Arrays;
+
+import org.leo.boot.startup.WarmUp;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+/**
+ * Warm-up of the JIT and the caches once the application started, /health reports it up afterwards
+ * Enabled with warmup.enabled=true
+ * @author fahdessid
+ */
+@Configuration
+@ConditionalOnProperty(name = "warmup.enabled", havingValue = "true")
+public class WarmUpConfiguration {
+
+  /**
+   * Also the "warmUp" health indicator
+   */
+  @Bean
+  public WarmUp warmUp() {
+    return new WarmUp(StringUtils.hasText(trafficLog) ? trafficLog : null, Arrays.asList(uris), threads, durationMillis);
+  }
+
+  @Value("${warmup.traffic-log:}")
+  private String trafficLog;
+
+  @Value("${warmup.uris:}")
+  private String[] uris;
+
+  @Value("${warmup.threads:4}")
+  private int threads;
+
+  @Value("${warmup.duration-ms:20000}")
+  private long durationMillis;
+}
@@ -1,5 +1,8 @@
 package org.leo.boot.configuration;
 
+import org.leo.boot.security.BCryptCalibration;
+import org.leo.boot.security.BoundedPasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -15,10 +18,34 @@ public class WebMvcConfig extends WebMvcConfigurerAdapter {
 
   /**
    * Injecting BCryptPasswordEncoder as a third party component
+   * The strength is calibrated at startup and the hashing runs on its own bounded pool, out of the Tomcat threads
    */
-  @Bean
-  public BCryptPasswordEncoder passwordEncoder() {
-    BCryptPasswordEncoder bCryptPasswordEncoder = new BCryptPasswordEncoder();
-    return bCryptPasswordEncoder;
+  @Bean(destroyMethod = "shutdown")
+  public BoundedPasswordEncoder passwordEncoder() {
+    int strength = calibrate ? BCryptCalibration.calibrate(targetMillis, minStrength, MAX_STRENGTH) : minStrength;
+    BCryptPasswordEncoder bCryptPasswordEncoder = new BCryptPasswordEncoder(strength);
+    int threads = hashingThreads > 0 ? hashingThreads : Runtime.getRuntime().availableProcessors();
+
+    return new BoundedPasswordEncoder(bCryptPasswordEncoder, threads, queueSize, timeoutMillis);
   }
+
+  private static final int MAX_STRENGTH = 16;
+
+  @Value("${password.hashing.calibrate:true}")
+  private boolean calibrate;
+
+  @Value("${password.hashing.target-ms:250}")
+  private long targetMillis;
+
+  @Value("${password.hashing.min-strength:10}")
+  private int minStrength;
+
+  @Value("${password.hashing.threads:0}")
+  private int hashingThreads;
+
+  @Value("${password.hashing.queue-size:100}")
+  private int queueSize;
+
+  @Value("${password.hashing.timeout-ms:5000}")
+  private long timeoutMillis;
 }
@@ -0,0 +1,23 @@
+package org.leo.boot.data.history;
+
+import java.util.Date;
+
+import lombok.Data;
+
+/**
+ * Summary of the changes of an item over [start, start + step)
+ * The last values are carried over from the previous buckets when the bucket has none (last known value)
+ * @author fahdessid
+ */
+@Data
+public class HistoryBucket {
+
+  private Date start;
+  private long changes;
+  private Integer minQuantity;
+  private Integer maxQuantity;
+  private Integer lastQuantity;
+  private Integer minRank;
+  private Integer maxRank;
+  private Integer lastRank;
+}
@@ -0,0 +1,17 @@
+package org.leo.boot.data.history;
+
+import java.util.Date;
+
+import lombok.Data;
+
+/**
+ * One change of an item : its quantity and / or its rank at that time (null when the change did not carry it)
+ * @author fahdessid
+ */
+@Data
+public class HistoryPoint {
+
+  private Date time;
+  private Integer quantity;
+  private Integer rank;
+}
@@ -0,0 +1,339 @@
+package org.leo.boot.data.history;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.AggregationOptions;
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.Cursor;
+import com.mongodb.DBObject;
+
+/**
+ * Quantity and rank history of the items, stored as time series buckets : one document per item and per hour
+ * { itemId, hour, count, samples: [{t: millis in the hour, q, r}], tLast, qMin, qMax, qLast, rMin, rMax, rLast }
+ * A bucket holds at most maxBucketSamples changes, a busy hour continues in overflow buckets of the same hour, so a
+ * document stays far from the 16MB limit
+ * The changes are queued and written by a single thread, so the item writes do not wait for their history. The
+ * changes of an item and hour are appended to their bucket by one upsert ($push $each and the summaries), the upserts
+ * of different buckets are independent : a bulk is unordered and a failing bucket loses its own changes only
+ * Ranges are read from the samples, downsampled series from the summaries only : the buckets are grouped by the server
+ * and a year of history at one point per day returns 365 documents, whatever the number of changes
+ * @author fahdessid
+ */
+public class ItemHistory implements PublicMetrics {
+
+  public ItemHistory(MongoTemplate mongoTemplate, int queueCapacity, int maxBulkSize, int maxBucketSamples, int maxRangeBuckets) {
+    this.mongoTemplate = mongoTemplate;
+    this.queue = new ArrayBlockingQueue<Change>(queueCapacity);
+    this.maxBulkSize = maxBulkSize;
+    this.maxBucketSamples = maxBucketSamples;
+    this.maxRangeBuckets = maxRangeBuckets;
+  }
+
+  public void start() {
+    writer = new Thread(this::writeLoop, "item-history");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  public void close() throws InterruptedException {
+    if (writer != null) {
+      writer.interrupt();
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  /**
+   * @param quantity null if the change did not touch it
+   * @param rank null if the change did not touch it
+   */
+  public void record(String itemId, Integer quantity, Integer rank) {
+    if (itemId == null || quantity == null && rank == null) {
+      return;
+    }
+    if (!queue.offer(new Change(itemId, System.currentTimeMillis(), quantity, rank))) {
+      dropped.increment();
+    }
+  }
+
+  /**
+   * @return the changes of the item over [from, to), from maxRangeBuckets buckets at most
+   */
+  public List<HistoryPoint> range(String itemId, Date from, Date to) {
+    ensureIndex();
+
+    Query query = new Query(Criteria.where("itemId").is(itemId).and("hour").gte(new Date(hour(from.getTime()))).lt(to))
+        .with(new Sort(Sort.Direction.ASC, "hour"))
+        .limit(maxRangeBuckets);
+    List<HistoryPoint> points = new ArrayList<HistoryPoint>();
+
+    for (DBObject bucket : mongoTemplate.find(query, DBObject.class, COLLECTION)) {
+      long hour = ((Date) bucket.get("hour")).getTime();
+
+      for (Object element : (List<?>) bucket.get("samples")) {
+        DBObject sample = (DBObject) element;
+        long time = hour + ((Number) sample.get("t")).longValue();
+
+        if (time >= from.getTime() && time < to.getTime()) {
+          HistoryPoint point = new HistoryPoint();
+
+          point.setTime(new Date(time));
+          point.setQuantity((Integer) sample.get("q"));
+          point.setRank((Integer) sample.get("r"));
+          points.add(point);
+        }
+      }
+    }
+
+    // the samples of a bucket are in queue order, the times are taken by the recording threads before queuing
+    points.sort((a, b) -> a.getTime().compareTo(b.getTime()));
+    return points;
+  }
+
+  /**
+   * @param stepHours the width of the returned buckets, aligned on the epoch
+   * @return one bucket per step having changes over [from, to)
+   */
+  public List<HistoryBucket> downsample(String itemId, Date from, Date to, int stepHours) {
+    ensureIndex();
+
+    long step = TimeUnit.HOURS.toMillis(Math.max(1, stepHours));
+    Object sinceEpoch = new BasicDBObject("$subtract", Arrays.asList("$hour", new Date(0)));
+    List<DBObject> pipeline = Arrays.<DBObject> asList(
+        new BasicDBObject("$match", new BasicDBObject("itemId", itemId)
+            .append("hour", new BasicDBObject("$gte", new Date(hour(from.getTime()))).append("$lt", to))),
+        // the overflow buckets of an hour in the order of their last change, for $last
+        new BasicDBObject("$sort", new BasicDBObject("hour", 1).append("tLast", 1)),
+        new BasicDBObject("$group", new BasicDBObject("_id",
+            new BasicDBObject("$subtract", Arrays.asList(sinceEpoch, new BasicDBObject("$mod", Arrays.asList(sinceEpoch, step)))))
+            .append("changes", new BasicDBObject("$sum", "$count"))
+            .append("qMin", new BasicDBObject("$min", "$qMin"))
+            .append("qMax", new BasicDBObject("$max", "$qMax"))
+            .append("qLast", new BasicDBObject("$last", "$qLast"))
+            .append("rMin", new BasicDBObject("$min", "$rMin"))
+            .append("rMax", new BasicDBObject("$max", "$rMax"))
+            .append("rLast", new BasicDBObject("$last", "$rLast"))),
+        new BasicDBObject("$sort", new BasicDBObject("_id", 1)));
+
+    List<HistoryBucket> buckets = new ArrayList<HistoryBucket>();
+    Integer lastQuantity = null;
+    Integer lastRank = null;
+
+    try (Cursor cursor = mongoTemplate.getCollection(COLLECTION).aggregate(pipeline,
+        AggregationOptions.builder().outputMode(AggregationOptions.OutputMode.CURSOR).build())) {
+      while (cursor.hasNext()) {
+        DBObject result = cursor.next();
+        HistoryBucket bucket = new HistoryBucket();
+
+        lastQuantity = result.get("qLast") != null ? (Integer) result.get("qLast") : lastQuantity;
+        lastRank = result.get("rLast") != null ? (Integer) result.get("rLast") : lastRank;
+
+        bucket.setStart(new Date(((Number) result.get("_id")).longValue()));
+        bucket.setChanges(((Number) result.get("changes")).longValue());
+        bucket.setMinQuantity((Integer) result.get("qMin"));
+        bucket.setMaxQuantity((Integer) result.get("qMax"));
+        bucket.setLastQuantity(lastQuantity);
+        bucket.setMinRank((Integer) result.get("rMin"));
+        bucket.setMaxRank((Integer) result.get("rMax"));
+        bucket.setLastRank(lastRank);
+        buckets.add(bucket);
+      }
+    }
+
+    return buckets;
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("items.history.appended", appended.sum()));
+    metrics.add(new Metric<Long>("items.history.dropped", dropped.sum()));
+    metrics.add(new Metric<Long>("items.history.failed", failed.sum()));
+    metrics.add(new Metric<Integer>("items.history.queued", queue.size()));
+
+    return metrics;
+  }
+
+  private void writeLoop() {
+    List<Change> changes = new ArrayList<Change>(maxBulkSize);
+
+    try {
+      for (;;) {
+        changes.add(queue.take());
+        queue.drainTo(changes, maxBulkSize - 1);
+        write(changes);
+        changes.clear();
+      }
+    } catch (InterruptedException e) {
+      // closing : the changes already queued are still written
+      queue.drainTo(changes);
+      write(changes);
+    }
+  }
+
+  private void write(List<Change> changes) {
+    if (changes.isEmpty()) {
+      return;
+    }
+
+    // the changes of a bucket, in queue order, at most maxBucketSamples per upsert
+    Map<String, List<Change>> buckets = new LinkedHashMap<String, List<Change>>();
+
+    for (Change change : changes) {
+      buckets.computeIfAbsent(change.itemId + ":" + hour(change.time), key -> new ArrayList<Change>()).add(change);
+    }
+
+    List<List<Change>> upserts = new ArrayList<List<Change>>(buckets.size());
+
+    for (List<Change> bucket : buckets.values()) {
+      for (int from = 0; from < bucket.size(); from += maxBucketSamples) {
+        upserts.add(bucket.subList(from, Math.min(from + maxBucketSamples, bucket.size())));
+      }
+    }
+
+    try {
+      ensureIndex();
+
+      BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, COLLECTION);
+
+      for (List<Change> upsert : upserts) {
+        bulk.upsert(bucketQuery(upsert), bucketUpdate(upsert));
+      }
+
+      bulk.execute();
+      appended.add(changes.size());
+    } catch (BulkOperationException e) {
+      int lost = 0;
+
+      for (BulkWriteError error : e.getErrors()) {
+        lost += upserts.get(error.getIndex()).size();
+      }
+      appended.add(changes.size() - lost);
+      failed.add(lost);
+      LOGGER.warn("{} item history changes lost : {}", lost, e.getErrors().get(0).getMessage());
+    } catch (RuntimeException e) {
+      // the writer thread must outlive the failures of MongoDB
+      failed.add(changes.size());
+      LOGGER.warn("{} item history changes lost : {}", changes.size(), e.toString());
+    }
+  }
+
+  /**
+   * The bucket of the hour having room for the changes, a new overflow bucket when there is none (the upsert inserts
+   * the itemId and hour of the query)
+   */
+  private Query bucketQuery(List<Change> changes) {
+    Change first = changes.get(0);
+
+    return new Query(Criteria.where("itemId").is(first.itemId).and("hour").is(new Date(hour(first.time)))
+        .and("count").lte(maxBucketSamples - changes.size()));
+  }
+
+  private Update bucketUpdate(List<Change> changes) {
+    long hour = hour(changes.get(0).time);
+    List<DBObject> samples = new ArrayList<DBObject>(changes.size());
+    Integer minQuantity = null;
+    Integer maxQuantity = null;
+    Integer lastQuantity = null;
+    Integer minRank = null;
+    Integer maxRank = null;
+    Integer lastRank = null;
+    long lastTime = 0;
+
+    for (Change change : changes) {
+      BasicDBObject sample = new BasicDBObject("t", change.time - hour);
+
+      if (change.quantity != null) {
+        sample.append("q", change.quantity);
+        minQuantity = minQuantity == null ? change.quantity : Math.min(minQuantity, change.quantity);
+        maxQuantity = maxQuantity == null ? change.quantity : Math.max(maxQuantity, change.quantity);
+        lastQuantity = change.quantity;
+      }
+      if (change.rank != null) {
+        sample.append("r", change.rank);
+        minRank = minRank == null ? change.rank : Math.min(minRank, change.rank);
+        maxRank = maxRank == null ? change.rank : Math.max(maxRank, change.rank);
+        lastRank = change.rank;
+      }
+      lastTime = Math.max(lastTime, change.time - hour);
+      samples.add(sample);
+    }
+
+    Update update = new Update().inc("count", changes.size()).max("tLast", lastTime);
+
+    update.push("samples").each(samples.toArray());
+    if (lastQuantity != null) {
+      update.min("qMin", minQuantity).max("qMax", maxQuantity).set("qLast", lastQuantity);
+    }
+    if (lastRank != null) {
+      update.min("rMin", minRank).max("rMax", maxRank).set("rLast", lastRank);
+    }
+    return update;
+  }
+
+  private void ensureIndex() {
+    if (!indexed) {
+      mongoTemplate.indexOps(COLLECTION).ensureIndex(new Index().on("itemId", Sort.Direction.ASC).on("hour", Sort.Direction.ASC));
+      indexed = true;
+    }
+  }
+
+  private static long hour(long millis) {
+    return millis - Math.floorMod(millis, HOUR);
+  }
+
+  private static final class Change {
+
+    Change(String itemId, long time, Integer quantity, Integer rank) {
+      this.itemId = itemId;
+      this.time = time;
+      this.quantity = quantity;
+      this.rank = rank;
+    }
+
+    private final String itemId;
+    private final long time;
+    private final Integer quantity;
+    private final Integer rank;
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ItemHistory.class);
+  private static final String COLLECTION = "item_history";
+  private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+  private final MongoTemplate mongoTemplate;
+  private final BlockingQueue<Change> queue;
+  private final int maxBulkSize;
+  private final int maxBucketSamples;
+  private final int maxRangeBuckets;
+  private final LongAdder appended = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private Thread writer;
+  private volatile boolean indexed;
+}
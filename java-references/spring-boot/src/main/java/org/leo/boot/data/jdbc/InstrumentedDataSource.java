@@ -0,0 +1,85 @@
+package org.leo.boot.data.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/**
+ * DataSource proxy timing every statement executed through its connections
+ * JDK dynamic proxies wrap the DataSource, its Connections and their Statements, only the execute* calls are timed,
+ * everything else goes straight to the real objects
+ * @author fahdessid
+ */
+public final class InstrumentedDataSource {
+
+  private InstrumentedDataSource() {
+  }
+
+  public static DataSource wrap(DataSource dataSource, JdbcStatistics statistics) {
+    return proxy(DataSource.class, (proxy, method, args) -> {
+      Object result = invoke(dataSource, method, args);
+
+      return result instanceof Connection ? wrapConnection((Connection) result, statistics) : result;
+    });
+  }
+
+  private static Connection wrapConnection(Connection connection, JdbcStatistics statistics) {
+    return proxy(Connection.class, (proxy, method, args) -> {
+      Object result = invoke(connection, method, args);
+
+      if (result instanceof CallableStatement) {
+        return wrapStatement(CallableStatement.class, (Statement) result, (String) args[0], statistics);
+      } else if (result instanceof PreparedStatement) {
+        return wrapStatement(PreparedStatement.class, (Statement) result, (String) args[0], statistics);
+      } else if (result instanceof Statement) {
+        return wrapStatement(Statement.class, (Statement) result, null, statistics);
+      }
+      return result;
+    });
+  }
+
+  /**
+   * @param preparedSql the SQL given at prepare time, null for a plain Statement where it comes with execute(sql)
+   */
+  private static <S extends Statement> S wrapStatement(Class<S> type, Statement statement, String preparedSql, JdbcStatistics statistics) {
+    return proxy(type, (proxy, method, args) -> {
+      if (!method.getName().startsWith("execute")) {
+        return invoke(statement, method, args);
+      }
+
+      String sql = preparedSql;
+
+      if (sql == null) {
+        sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : "batch";
+      }
+
+      long start = System.nanoTime();
+
+      try {
+        return invoke(statement, method, args);
+      } finally {
+        statistics.record(sql, System.nanoTime() - start);
+      }
+    });
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[] {type}, handler);
+  }
+}
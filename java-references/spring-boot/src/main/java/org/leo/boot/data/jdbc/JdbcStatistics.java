@@ -0,0 +1,145 @@
+package org.leo.boot.data.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Statistics of the SQL statements sent through the InstrumentedDataSource
+ * Statements are normalized (literals and IN lists replaced by ?) so the same query with other values is counted once.
+ * Between beginRequest() and endRequest() the statements of the current thread are also counted per HTTP request :
+ * the same statement executed more than nPlusOneThreshold times in one request is reported as an N+1 suspect,
+ * typically a lazy collection (roles...) loaded entity by entity
+ * @author fahdessid
+ */
+public class JdbcStatistics implements PublicMetrics {
+
+  public JdbcStatistics(int nPlusOneThreshold, int maxReportedStatements) {
+    this.nPlusOneThreshold = nPlusOneThreshold;
+    this.maxReportedStatements = maxReportedStatements;
+  }
+
+  public void record(String sql, long nanos) {
+    String statement = normalize(sql);
+
+    statements.computeIfAbsent(statement, key -> new StatementStatistics()).latency.record(nanos / 1000);
+
+    Map<String, Integer> requestCounts = currentRequest.get();
+
+    if (requestCounts != null) {
+      requestCounts.merge(statement, 1, Integer::sum);
+    }
+  }
+
+  public void beginRequest() {
+    currentRequest.set(new HashMap<String, Integer>());
+  }
+
+  public void endRequest(String requestUri) {
+    Map<String, Integer> requestCounts = currentRequest.get();
+    currentRequest.remove();
+
+    if (requestCounts == null) {
+      return;
+    }
+
+    int total = 0;
+
+    for (Map.Entry<String, Integer> entry : requestCounts.entrySet()) {
+      total += entry.getValue();
+
+      if (entry.getValue() > nPlusOneThreshold) {
+        statements.get(entry.getKey()).nPlusOneSuspects.increment();
+        nPlusOneSuspects.increment();
+        LOGGER.warn("N+1 suspect on {} : executed {} times in one request : {}", requestUri, entry.getValue(), entry.getKey());
+      }
+    }
+
+    queriesPerRequest.record(total);
+  }
+
+  /**
+   * Overall metrics, then latency in microseconds of the most executed statements, named jdbc.query.[statement].*
+   */
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("jdbc.requests", queriesPerRequest.getCount()));
+    metrics.add(new Metric<Long>("jdbc.requests.queries.mean", queriesPerRequest.getMean()));
+    metrics.add(new Metric<Long>("jdbc.requests.queries.p95", queriesPerRequest.getPercentile(95)));
+    metrics.add(new Metric<Long>("jdbc.requests.queries.max", queriesPerRequest.getMax()));
+    metrics.add(new Metric<Long>("jdbc.nplusone.suspects", nPlusOneSuspects.sum()));
+    metrics.add(new Metric<Integer>("jdbc.statements", statements.size()));
+
+    List<Map.Entry<String, StatementStatistics>> mostExecuted = new ArrayList<Map.Entry<String, StatementStatistics>>(statements.entrySet());
+    mostExecuted.sort((a, b) -> Long.compare(b.getValue().latency.getCount(), a.getValue().latency.getCount()));
+
+    for (Map.Entry<String, StatementStatistics> entry : mostExecuted.subList(0, Math.min(maxReportedStatements, mostExecuted.size()))) {
+      String prefix = "jdbc.query.[" + entry.getKey() + "].";
+      LatencyHistogram latency = entry.getValue().latency;
+
+      metrics.add(new Metric<Long>(prefix + "count", latency.getCount()));
+      metrics.add(new Metric<Long>(prefix + "mean", latency.getMean()));
+      metrics.add(new Metric<Long>(prefix + "p50", latency.getPercentile(50)));
+      metrics.add(new Metric<Long>(prefix + "p95", latency.getPercentile(95)));
+      metrics.add(new Metric<Long>(prefix + "p99", latency.getPercentile(99)));
+      metrics.add(new Metric<Long>(prefix + "max", latency.getMax()));
+      metrics.add(new Metric<Long>(prefix + "nplusone", entry.getValue().nPlusOneSuspects.sum()));
+    }
+
+    return metrics;
+  }
+
+  /**
+   * Normalized statements are memoized, the raw SQL of prepared statements is a small set.
+   * Statements built with literals could fill the memo, so it stops growing at MAX_MEMOIZED entries
+   */
+  String normalize(String sql) {
+    String normalized = normalizedSql.get(sql);
+
+    if (normalized == null) {
+      normalized = WHITESPACES.matcher(sql.trim()).replaceAll(" ");
+      normalized = STRING_LITERALS.matcher(normalized).replaceAll("?");
+      normalized = NUMBERS.matcher(normalized).replaceAll("?");
+      normalized = IN_LISTS.matcher(normalized).replaceAll("in (?)");
+
+      if (normalizedSql.size() < MAX_MEMOIZED) {
+        normalizedSql.put(sql, normalized);
+      }
+    }
+
+    return normalized;
+  }
+
+  private static class StatementStatistics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder nPlusOneSuspects = new LongAdder();
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(JdbcStatistics.class);
+  private static final Pattern WHITESPACES = Pattern.compile("\\s+");
+  private static final Pattern STRING_LITERALS = Pattern.compile("'(?:[^']|'')*'");
+  private static final Pattern NUMBERS = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+  private static final Pattern IN_LISTS = Pattern.compile("(?i)in\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+  private static final int MAX_MEMOIZED = 10000;
+
+  private final int nPlusOneThreshold;
+  private final int maxReportedStatements;
+  private final ConcurrentMap<String, StatementStatistics> statements = new ConcurrentHashMap<String, StatementStatistics>();
+  private final ConcurrentMap<String, String> normalizedSql = new ConcurrentHashMap<String, String>();
+  private final ThreadLocal<Map<String, Integer>> currentRequest = new ThreadLocal<Map<String, Integer>>();
+  private final LatencyHistogram queriesPerRequest = new LatencyHistogram();
+  private final LongAdder nPlusOneSuspects = new LongAdder();
+}
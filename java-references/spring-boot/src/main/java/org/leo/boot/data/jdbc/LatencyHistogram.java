@@ -0,0 +1,87 @@
+package org.leo.boot.data.jdbc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram with power of two buckets, bucket i counts values in [2^(i-1), 2^i)
+ * Percentiles are the upper bound of the bucket they fall into, which is precise enough to rank queries
+ * @author fahdessid
+ */
+public class LatencyHistogram {
+
+  public void record(long value) {
+    int bucket = value <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+
+    buckets[bucket].increment();
+    count.increment();
+    total.add(value);
+
+    for (;;) {
+      long currentMax = max.get();
+
+      if (value <= currentMax || max.compareAndSet(currentMax, value)) {
+        break;
+      }
+    }
+  }
+
+  public long getCount() {
+    return count.sum();
+  }
+
+  public long getTotal() {
+    return total.sum();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  public long getMean() {
+    long n = count.sum();
+
+    return n == 0 ? 0 : total.sum() / n;
+  }
+
+  /**
+   * @param percentile between 0 and 100
+   */
+  public long getPercentile(double percentile) {
+    long n = count.sum();
+
+    if (n == 0) {
+      return 0;
+    }
+
+    long rank = (long) Math.ceil(n * percentile / 100);
+    long seen = 0;
+
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += buckets[i].sum();
+
+      if (seen >= rank) {
+        return Math.min(i == 0 ? 0 : 1L << i, max.get());
+      }
+    }
+
+    return max.get();
+  }
+
+  private static final int BUCKETS = 40;
+
+  private final LongAdder[] buckets = newBuckets();
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  private static LongAdder[] newBuckets() {
+    LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new LongAdder();
+    }
+
+    return buckets;
+  }
+}
@@ -0,0 +1,110 @@
+package org.leo.boot.data.jdbc;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.autoconfigure.jdbc.metadata.TomcatDataSourcePoolMetadata;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource sending read only transactions (and ReadYourWrites.onReplica reads) to the replica pool, everything else to
+ * the primary pool
+ *
+ * The pool is chosen when the connection is really fetched, so this DataSource must be wrapped in a
+ * LazyConnectionDataSourceProxy : the transaction manager asks for a connection before the read only flag of the
+ * transaction is published, the proxy defers the fetch to the first statement
+ * A read write transaction marks the thread as sticky to the primary, see ReadYourWrites
+ * @author fahdessid
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements PublicMetrics {
+
+  public ReadWriteRoutingDataSource(org.apache.tomcat.jdbc.pool.DataSource primary,
+      org.apache.tomcat.jdbc.pool.DataSource replica, long stickyMillis) {
+    Map<Object, Object> targets = new HashMap<Object, Object>();
+
+    targets.put(PRIMARY, primary);
+    targets.put(REPLICA, replica);
+
+    setTargetDataSources(targets);
+    setDefaultTargetDataSource(primary);
+
+    this.primary = new TomcatDataSourcePoolMetadata(primary);
+    this.replica = new TomcatDataSourcePoolMetadata(replica);
+    this.stickyMillis = stickyMillis;
+  }
+
+  @Override
+  protected Object determineCurrentLookupKey() {
+    boolean transaction = TransactionSynchronizationManager.isActualTransactionActive();
+    boolean readOnly = transaction ? TransactionSynchronizationManager.isCurrentTransactionReadOnly() : ReadYourWrites.isReplicaScope();
+
+    if (readOnly && !ReadYourWrites.isSticky()) {
+      replicaConnections.increment();
+      return REPLICA;
+    }
+
+    if (readOnly) {
+      stickyConnections.increment();
+    } else if (transaction) {
+      markWriteOnCommit();
+    }
+
+    primaryConnections.increment();
+    return PRIMARY;
+  }
+
+  /**
+   * The replica lag is counted from the commit, a long transaction must not use up the sticky delay
+   */
+  private void markWriteOnCommit() {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      ReadYourWrites.markWrite(stickyMillis);
+      return;
+    }
+
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+      @Override
+      public void afterCommit() {
+        ReadYourWrites.markWrite(stickyMillis);
+      }
+    });
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("datasource.routing.primary.connections", primaryConnections.sum()));
+    metrics.add(new Metric<Long>("datasource.routing.primary.sticky", stickyConnections.sum()));
+    metrics.add(new Metric<Long>("datasource.routing.replica.connections", replicaConnections.sum()));
+    addPoolMetrics(metrics, PRIMARY, primary);
+    addPoolMetrics(metrics, REPLICA, replica);
+
+    return metrics;
+  }
+
+  private static void addPoolMetrics(List<Metric<?>> metrics, String pool, TomcatDataSourcePoolMetadata metadata) {
+    metrics.add(new Metric<Integer>("datasource.routing." + pool + ".active", metadata.getActive()));
+    metrics.add(new Metric<Integer>("datasource.routing." + pool + ".max", metadata.getMax()));
+    metrics.add(new Metric<Float>("datasource.routing." + pool + ".usage", metadata.getUsage()));
+  }
+
+  private static final String PRIMARY = "primary";
+  private static final String REPLICA = "replica";
+
+  private final TomcatDataSourcePoolMetadata primary;
+  private final TomcatDataSourcePoolMetadata replica;
+  private final long stickyMillis;
+  private final LongAdder primaryConnections = new LongAdder();
+  private final LongAdder stickyConnections = new LongAdder();
+  private final LongAdder replicaConnections = new LongAdder();
+}
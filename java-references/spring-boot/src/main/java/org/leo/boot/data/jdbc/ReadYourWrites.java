@@ -0,0 +1,77 @@
+package org.leo.boot.data.jdbc;
+
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Per thread routing hints of ReadWriteRoutingDataSource
+ *
+ * Stickiness : once a thread has written, its reads go to the primary until primaryUntil, the replica may not have the
+ * write yet. A web request starts from the deadline carried by the client (cookie) and is told when it moves it,
+ * so the next requests of the same client read their writes too
+ *
+ * Replica scope : reads made without transaction (plain JdbcTemplate) go to the primary by default,
+ * onReplica() sends them to the replica
+ * @author fahdessid
+ */
+public final class ReadYourWrites {
+
+  private ReadYourWrites() {
+  }
+
+  /**
+   * Starts a request, primaryUntil is the deadline sent by the client (0 if none), onWrite receives the new deadline
+   */
+  public static void begin(long primaryUntil, LongConsumer onWrite) {
+    State state = STATE.get();
+
+    state.primaryUntil = primaryUntil;
+    state.onWrite = onWrite;
+  }
+
+  public static void end() {
+    STATE.remove();
+  }
+
+  public static void markWrite(long stickyMillis) {
+    State state = STATE.get();
+    long primaryUntil = System.currentTimeMillis() + stickyMillis;
+
+    state.primaryUntil = primaryUntil;
+
+    if (state.onWrite != null) {
+      state.onWrite.accept(primaryUntil);
+      // the client is told once per request
+      state.onWrite = null;
+    }
+  }
+
+  public static boolean isSticky() {
+    return STATE.get().primaryUntil > System.currentTimeMillis();
+  }
+
+  public static <T> T onReplica(Supplier<T> read) {
+    State state = STATE.get();
+    boolean previous = state.replicaScope;
+
+    state.replicaScope = true;
+
+    try {
+      return read.get();
+    } finally {
+      state.replicaScope = previous;
+    }
+  }
+
+  static boolean isReplicaScope() {
+    return STATE.get().replicaScope;
+  }
+
+  private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+  private static final class State {
+    private long primaryUntil;
+    private LongConsumer onWrite;
+    private boolean replicaScope;
+  }
+}
@@ -1,5 +1,6 @@
 package org.leo.boot.data.model;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
@@ -7,14 +8,23 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 
 /**
  * Role model class
+ * Read mostly, kept in the second level cache
+ * Equality on the id only : hashing a lazy Role reference (in a user roles set) must not initialize it
  * @author fahdessid
  */
 @Data
+@EqualsAndHashCode(of = "id")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.NONSTRICT_READ_WRITE)
 @Table(name="Role")
 public class Role {
   
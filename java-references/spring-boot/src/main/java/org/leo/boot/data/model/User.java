@@ -2,9 +2,10 @@ package org.leo.boot.data.model;
 
 import java.util.Set;
 
-import javax.persistence.CascadeType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -13,18 +14,27 @@ import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.Table;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.validator.constraints.Email;
 import org.hibernate.validator.constraints.Length;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 /**
  * User model class
+ * Kept in the second level cache, as well as its roles collection
  * @author fahdessid
  */
 @Data
+@EqualsAndHashCode(exclude = "roles")
+@ToString(exclude = "roles")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name="User")
 public class User {
 
@@ -33,7 +43,7 @@ public class User {
   @Column(name = "user_id")
   private int id;
   
-  @Column(name = "email")
+  @Column(name = "email", unique = true)
   @Email(message = "*Please provide a valid Email")
   @NotEmpty(message = "*Please provide an email")
   private String email;
@@ -54,7 +64,17 @@ public class User {
   @Column(name = "active")
   private int active;
   
-  @ManyToMany(cascade = CascadeType.ALL)
+  /**
+   * Fetch plan :
+   * lazy, so loading a user never joins user_role and role, the roles are only read when actually used
+   * (spring security reads them with its own single roles-query, not through this mapping)
+   * no cascade, roles are shared reference data : ALL would delete the ADMIN role with the first deleted user,
+   * and MERGE would select every role again on each save
+   * excluded from equals, hashCode and toString so logging or hashing a user does not initialize the collection,
+   * and hibernate.default_batch_fetch_size loads the roles of several users in one query when they are iterated
+   */
+  @ManyToMany(fetch = FetchType.LAZY)
+  @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
   @JoinTable(name = "user_role", joinColumns = @JoinColumn(name = "user_id"), inverseJoinColumns = @JoinColumn(name = "role_id"))
   private Set<Role> roles;
 }
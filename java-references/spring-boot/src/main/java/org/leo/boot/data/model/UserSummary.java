@@ -0,0 +1,26 @@
+package org.leo.boot.data.model;
+
+import java.io.Serializable;
+
+import lombok.Data;
+
+/**
+ * Read only view of a user with the displayed fields only, filled by a JPQL constructor expression
+ * Serializable as it is kept in the HTTP session
+ * @author fahdessid
+ */
+@Data
+public class UserSummary implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public UserSummary(String name, String lastName, String email) {
+    this.name = name;
+    this.lastName = lastName;
+    this.email = email;
+  }
+
+  private String name;
+  private String lastName;
+  private String email;
+}
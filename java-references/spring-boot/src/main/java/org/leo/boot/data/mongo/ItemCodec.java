@@ -0,0 +1,55 @@
+package org.leo.boot.data.mongo;
+
+import org.bson.types.ObjectId;
+import org.leo.boot.data.model.Item;
+
+import com.mongodb.DBObject;
+
+/**
+ * Hand written Item to / from BSON document mapping, reading and writing the fields directly
+ * The document layout is the one of the reflective mapping : _id as an ObjectId when the id is a valid one,
+ * null fields left out, but without the _class type hint (Item has no sub types)
+ * Any field added to Item must be added here too
+ * @author fahdessid
+ */
+public final class ItemCodec {
+
+  private ItemCodec() {
+  }
+
+  public static void encode(Item item, DBObject document) {
+    String id = item.getId();
+
+    if (id != null) {
+      document.put(ID, ObjectId.isValid(id) ? new ObjectId(id) : id);
+    }
+    putIfNotNull(document, NAME, item.getName());
+    putIfNotNull(document, CODE, item.getCode());
+    putIfNotNull(document, TYPE, item.getType());
+    document.put(QUANTITY, item.getQuantity());
+  }
+
+  public static Item decode(DBObject document) {
+    Object quantity = document.get(QUANTITY);
+    Item item = new Item((String) document.get(NAME), (String) document.get(CODE), (String) document.get(TYPE),
+        quantity != null ? ((Number) quantity).intValue() : 0);
+    Object id = document.get(ID);
+
+    if (id != null) {
+      item.setId(id.toString());
+    }
+    return item;
+  }
+
+  private static void putIfNotNull(DBObject document, String key, Object value) {
+    if (value != null) {
+      document.put(key, value);
+    }
+  }
+
+  private static final String ID = "_id";
+  private static final String NAME = "name";
+  private static final String CODE = "code";
+  private static final String TYPE = "type";
+  private static final String QUANTITY = "quantity";
+}
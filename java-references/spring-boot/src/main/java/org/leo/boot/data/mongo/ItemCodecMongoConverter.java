@@ -0,0 +1,42 @@
+package org.leo.boot.data.mongo;
+
+import org.leo.boot.data.model.Item;
+import org.springframework.data.mongodb.core.convert.DbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import com.mongodb.DBObject;
+
+/**
+ * MappingMongoConverter reading and writing whole Item documents with the ItemCodec, the other types keep the mapping
+ * MongoTemplate (and so the repositories) calls read for every document it fetches and write for every document it saves
+ * A custom converter registered in CustomConversions would still go through the ConversionService lookup on every
+ * document, costing about as much as the mapping itself
+ * The mapping metadata of Item is unchanged, the queries and updates on its fields are mapped as before
+ * @author fahdessid
+ */
+public class ItemCodecMongoConverter extends MappingMongoConverter {
+
+  public ItemCodecMongoConverter(DbRefResolver dbRefResolver, MongoMappingContext mappingContext) {
+    super(dbRefResolver, mappingContext);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public <S> S read(Class<S> type, DBObject document) {
+    // an exact match, a sub class is left to the mapping and its type hint
+    if (type == Item.class && document != null) {
+      return (S) ItemCodec.decode(document);
+    }
+    return super.read(type, document);
+  }
+
+  @Override
+  public void write(Object source, DBObject document) {
+    if (source != null && source.getClass() == Item.class) {
+      ItemCodec.encode((Item) source, document);
+      return;
+    }
+    super.write(source, document);
+  }
+}
@@ -0,0 +1,301 @@
+package org.leo.boot.data.mongo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.leo.boot.data.jdbc.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import com.mongodb.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+/**
+ * Statistics of the commands sent by the MongoDB driver, so of every MongoTemplate and repository operation
+ * Commands are grouped by shape : the command with its values replaced by ?, "find items_collection {filter: {name: ?}}"
+ * Commands slower than slowThresholdMillis are logged and kept in a ring buffer of the last slowCapacity ones,
+ * the reads and writes MongoDB can explain are explained (query planner only, nothing is executed) on a background thread
+ * @author fahdessid
+ */
+public class MongoCommandStatistics implements CommandListener, PublicMetrics {
+
+  public MongoCommandStatistics(long slowThresholdMillis, int slowCapacity, int maxReportedShapes, Supplier<MongoClient> mongoClient) {
+    this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+    this.slowOperations = new SlowOperation[slowCapacity];
+    this.maxReportedShapes = maxReportedShapes;
+    this.mongoClient = mongoClient;
+  }
+
+  @Override
+  public void commandStarted(CommandStartedEvent event) {
+    if (IGNORED_COMMANDS.contains(event.getCommandName())) {
+      return;
+    }
+
+    BsonDocument command = event.getCommand();
+    // the command document is a view on the driver buffer, only a copy can be explained after the command
+    BsonDocument explainable = EXPLAINABLE_COMMANDS.contains(event.getCommandName())
+        ? new RawBsonDocument(command, new BsonDocumentCodec()) : null;
+
+    started.put(event.getRequestId(),
+        new StartedCommand(System.currentTimeMillis(), event.getDatabaseName(), shape(event.getCommandName(), command), explainable));
+  }
+
+  @Override
+  public void commandSucceeded(CommandSucceededEvent event) {
+    completed(started.remove(event.getRequestId()), event.getElapsedTime(TimeUnit.NANOSECONDS), null);
+  }
+
+  @Override
+  public void commandFailed(CommandFailedEvent event) {
+    completed(started.remove(event.getRequestId()), event.getElapsedTime(TimeUnit.NANOSECONDS), event.getThrowable());
+  }
+
+  /**
+   * @return the slow operations of the ring buffer, slowest first
+   */
+  public List<SlowOperation> getSlowOperations() {
+    List<SlowOperation> operations = new ArrayList<SlowOperation>();
+
+    synchronized (slowOperations) {
+      for (SlowOperation operation : slowOperations) {
+        if (operation != null) {
+          operations.add(operation);
+        }
+      }
+    }
+
+    operations.sort((a, b) -> Long.compare(b.getDurationMillis(), a.getDurationMillis()));
+    return operations;
+  }
+
+  /**
+   * Overall metrics, then latency in microseconds of the most executed shapes, named mongo.command.[shape].*
+   */
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("mongo.commands.slow", slowCount.sum()));
+    metrics.add(new Metric<Long>("mongo.commands.failed", failedCount.sum()));
+    metrics.add(new Metric<Long>("mongo.commands.explain.skipped", explainSkipped.sum()));
+    metrics.add(new Metric<Integer>("mongo.commands.shapes", shapes.size()));
+
+    List<Map.Entry<String, ShapeStatistics>> mostExecuted = new ArrayList<Map.Entry<String, ShapeStatistics>>(shapes.entrySet());
+    mostExecuted.sort((a, b) -> Long.compare(b.getValue().latency.getCount(), a.getValue().latency.getCount()));
+
+    for (Map.Entry<String, ShapeStatistics> entry : mostExecuted.subList(0, Math.min(maxReportedShapes, mostExecuted.size()))) {
+      String prefix = "mongo.command.[" + entry.getKey() + "].";
+      LatencyHistogram latency = entry.getValue().latency;
+
+      metrics.add(new Metric<Long>(prefix + "count", latency.getCount()));
+      metrics.add(new Metric<Long>(prefix + "mean", latency.getMean()));
+      metrics.add(new Metric<Long>(prefix + "p50", latency.getPercentile(50)));
+      metrics.add(new Metric<Long>(prefix + "p95", latency.getPercentile(95)));
+      metrics.add(new Metric<Long>(prefix + "p99", latency.getPercentile(99)));
+      metrics.add(new Metric<Long>(prefix + "max", latency.getMax()));
+      metrics.add(new Metric<Long>(prefix + "slow", entry.getValue().slow.sum()));
+    }
+
+    return metrics;
+  }
+
+  public void close() {
+    explainExecutor.shutdownNow();
+  }
+
+  private void completed(StartedCommand command, long nanos, Throwable error) {
+    if (command == null) {
+      return;
+    }
+
+    ShapeStatistics statistics = shapeStatistics(command.shape);
+    statistics.latency.record(nanos / 1000);
+
+    if (error != null) {
+      failedCount.increment();
+    }
+
+    if (nanos < slowThresholdNanos) {
+      return;
+    }
+
+    SlowOperation operation = new SlowOperation();
+    operation.setStartedAt(command.startedAt);
+    operation.setDurationMillis(TimeUnit.NANOSECONDS.toMillis(nanos));
+    operation.setDatabase(command.database);
+    operation.setShape(command.shape);
+    operation.setError(error != null ? error.toString() : null);
+
+    statistics.slow.increment();
+    slowCount.increment();
+
+    synchronized (slowOperations) {
+      slowOperations[nextSlot] = operation;
+      nextSlot = (nextSlot + 1) % slowOperations.length;
+    }
+
+    LOGGER.warn("Slow MongoDB command on {} : {}ms : {}", command.database, operation.getDurationMillis(), command.shape);
+
+    if (command.explainable != null) {
+      try {
+        explainExecutor.execute(() -> operation.setExplain(explain(command)));
+      } catch (RuntimeException e) {
+        // queue full, a burst of slow commands is explained partially
+        explainSkipped.increment();
+      }
+    }
+  }
+
+  private String explain(StartedCommand command) {
+    try {
+      BsonDocument explain = new BsonDocument("explain", command.explainable).append("verbosity", new BsonString("queryPlanner"));
+      Object queryPlanner = mongoClient.get().getDatabase(command.database).runCommand(explain).get("queryPlanner");
+
+      return queryPlanner instanceof Document ? ((Document) queryPlanner).toJson() : String.valueOf(queryPlanner);
+    } catch (RuntimeException e) {
+      LOGGER.debug("Explain failed for {}", command.shape, e);
+      return "explain failed : " + e;
+    }
+  }
+
+  /**
+   * The number of shapes is bounded by the code, unless queries are built with keys taken from the input :
+   * past MAX_SHAPES the new ones share a single entry
+   */
+  private ShapeStatistics shapeStatistics(String shape) {
+    ShapeStatistics statistics = shapes.get(shape);
+
+    if (statistics == null) {
+      statistics = shapes.computeIfAbsent(shapes.size() < MAX_SHAPES ? shape : OTHER_SHAPES, key -> new ShapeStatistics());
+    }
+    return statistics;
+  }
+
+  static String shape(String commandName, BsonDocument command) {
+    StringBuilder shape = new StringBuilder(commandName);
+    BsonValue target = command.get(commandName);
+
+    // the command value is the collection name
+    if (target != null && target.isString()) {
+      shape.append(' ').append(target.asString().getValue());
+    }
+    shape.append(" {");
+
+    boolean first = true;
+
+    for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+      if (field.getKey().equals(commandName) || IGNORED_FIELDS.contains(field.getKey())) {
+        continue;
+      }
+      if (!first) {
+        shape.append(", ");
+      }
+      shape.append(field.getKey()).append(": ");
+      appendShape(shape, field.getValue());
+      first = false;
+    }
+
+    return shape.append('}').toString();
+  }
+
+  private static void appendShape(StringBuilder shape, BsonValue value) {
+    if (value.isDocument()) {
+      shape.append('{');
+
+      boolean first = true;
+
+      for (Map.Entry<String, BsonValue> field : value.asDocument().entrySet()) {
+        if (!first) {
+          shape.append(", ");
+        }
+        shape.append(field.getKey()).append(": ");
+        appendShape(shape, field.getValue());
+        first = false;
+      }
+      shape.append('}');
+    } else if (value.isArray()) {
+      // the elements of a list usually share one shape, the first one stands for all
+      shape.append('[');
+
+      if (!value.asArray().isEmpty()) {
+        appendShape(shape, value.asArray().get(0));
+      }
+      shape.append(']');
+    } else {
+      shape.append('?');
+    }
+  }
+
+  private static class StartedCommand {
+
+    StartedCommand(long startedAt, String database, String shape, BsonDocument explainable) {
+      this.startedAt = startedAt;
+      this.database = database;
+      this.shape = shape;
+      this.explainable = explainable;
+    }
+
+    private final long startedAt;
+    private final String database;
+    private final String shape;
+    private final BsonDocument explainable;
+  }
+
+  private static class ShapeStatistics {
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder slow = new LongAdder();
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MongoCommandStatistics.class);
+  /** the explains of the slow commands, and the handshake / authentication of the connections */
+  private static final Set<String> IGNORED_COMMANDS = new HashSet<String>(Arrays.asList("explain", "ismaster", "isMaster",
+      "buildinfo", "buildInfo", "getnonce", "saslStart", "saslContinue", "authenticate"));
+  private static final Set<String> EXPLAINABLE_COMMANDS = new HashSet<String>(Arrays.asList("find", "count", "distinct",
+      "aggregate", "update", "delete", "findAndModify", "findandmodify"));
+  /** inserted documents are payload, not shape */
+  private static final Set<String> IGNORED_FIELDS = new HashSet<String>(Arrays.asList("documents", "$db", "lsid", "$readPreference"));
+  private static final String OTHER_SHAPES = "(other shapes)";
+  private static final int MAX_SHAPES = 1000;
+  private static final int EXPLAIN_QUEUE = 16;
+
+  private final long slowThresholdNanos;
+  private final int maxReportedShapes;
+  private final Supplier<MongoClient> mongoClient;
+  private final SlowOperation[] slowOperations;
+  private int nextSlot;
+  private final ConcurrentMap<Integer, StartedCommand> started = new ConcurrentHashMap<Integer, StartedCommand>();
+  private final ConcurrentMap<String, ShapeStatistics> shapes = new ConcurrentHashMap<String, ShapeStatistics>();
+  private final LongAdder slowCount = new LongAdder();
+  private final LongAdder failedCount = new LongAdder();
+  private final LongAdder explainSkipped = new LongAdder();
+  private final ThreadPoolExecutor explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<Runnable>(EXPLAIN_QUEUE), runnable -> {
+        Thread thread = new Thread(runnable, "mongo-explain");
+        thread.setDaemon(true);
+        return thread;
+      });
+}
@@ -0,0 +1,19 @@
+package org.leo.boot.data.mongo;
+
+import lombok.Data;
+
+/**
+ * A MongoDB command slower than the threshold of the MongoCommandStatistics
+ * explain is the query planner output (JSON), filled in asynchronously for the commands MongoDB can explain
+ * @author fahdessid
+ */
+@Data
+public class SlowOperation {
+
+  private long startedAt;
+  private long durationMillis;
+  private String database;
+  private String shape;
+  private String error;
+  private volatile String explain;
+}
@@ -1,5 +1,7 @@
 package org.leo.boot.data.repository;
 
+import java.util.Map;
+
 /**
  * Custom item repository to have custom methods
  * this interface needs an implementation with the same name as the main repository (ItemRepository) plus Impl
@@ -10,4 +12,12 @@ package org.leo.boot.data.repository;
 public interface ItemRepositoryCustom {
   
   int setItemRank(String item, int rank);
+
+  /**
+   * Adds each delta to the quantity of the matching item id in one bulk write
+   * An item records the flush id of the last delta it received, a delta is not applied again for the same flush id,
+   * so a failed write can be retried with its flush id
+   * @return the number of items the deltas were applied to
+   */
+  int adjustQuantities(Map<String, Integer> deltas, String flushId);
 }
@@ -1,7 +1,13 @@
 package org.leo.boot.data.repository;
 
+import java.util.Map;
+
+import org.leo.boot.data.history.ItemHistory;
 import org.leo.boot.data.model.Item;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -24,15 +30,62 @@ public class ItemRepositoryImpl implements ItemRepositoryCustom {
         
         update.set("rank", rank);
 
-        WriteResult result = mongoTemplate.updateFirst(query, update, Item.class);
+        if (itemHistory == null) {
+            WriteResult result = mongoTemplate.updateFirst(query, update, Item.class);
+
+            return result != null ? result.getN() : 0;
+        }
+
+        // the history needs the id and the quantity of the item, returned by the same round trip
+        Item updated = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Item.class);
 
-        if (result != null) {
-            return result.getN();
-        } else {
+        if (updated == null) {
             return 0;
         }
+
+        itemHistory.record(updated.getId(), updated.getQuantity(), rank);
+        return 1;
     } 
 
+    @Override
+    public int adjustQuantities(Map<String, Integer> deltas, String flushId) {
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkMode.UNORDERED, Item.class);
+
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            Query query = new Query(Criteria.where("id").is(delta.getKey()).and(LAST_FLUSH).ne(flushId));
+
+            bulk.updateOne(query, new Update().inc("quantity", delta.getValue()).set(LAST_FLUSH, flushId));
+        }
+
+        int matched = bulk.execute().getMatchedCount();
+
+        if (itemHistory != null) {
+            // $inc does not return the new quantities, read them back
+            Query updated = new Query(Criteria.where("id").in(deltas.keySet()));
+
+            updated.fields().include("quantity");
+
+            for (Item item : mongoTemplate.find(updated, Item.class)) {
+                itemHistory.record(item.getId(), item.getQuantity(), null);
+            }
+        }
+
+        return matched;
+    }
+
+    // not a property of Item, a save of the item drops it
+    private static final String LAST_FLUSH = "lastFlush";
+
     @Autowired
     MongoTemplate mongoTemplate;
+
+    /**
+     * Set when items.history.enabled=true
+     */
+    @Autowired(required = false)
+    ItemHistory itemHistory;
 }
@@ -0,0 +1,306 @@
+package org.leo.boot.data.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.leo.boot.concurrent.CircuitBreaker;
+import org.leo.boot.concurrent.CircuitOpenException;
+import org.leo.boot.data.model.Item;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Item repository calling its delegate through a CircuitBreaker, so a slow or unreachable MongoDB costs the requests
+ * a CircuitOpenException instead of a driver timeout each
+ * Reads by id, findAll and count keep their last result : when the circuit refuses the call, or the call fails,
+ * that result is returned instead, stale, and onStaleRead is told (to flag the response). The trial calls of the
+ * half open circuit revalidate the data. Without a previous result, and for the writes, the exception is thrown
+ * The stale results are the instances returned before, they must not be modified
+ * Successful writes keep them current : the results by id of the written items are replaced (deleted items become
+ * null), and the findAll and count results are dropped. A read racing with a write does not keep its result : each
+ * write bumps the version of its item ids (striped) and of the aggregates, a read keeps its result only if the version
+ * it started with is still current
+ * Only CircuitOpenException and the failures of the backend (the isFailure predicate of the circuit) fall back to the
+ * stale results, the other exceptions are thrown
+ * Reads that must not be stale (stock reservations...) are made within fresh()
+ * @author fahdessid
+ */
+public class ResilientItemRepository implements ItemRepository {
+
+  public ResilientItemRepository(ItemRepository delegate, CircuitBreaker circuitBreaker, long maxStaleEntries, Runnable onStaleRead) {
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+    this.lastResults = Caffeine.newBuilder().maximumSize(maxStaleEntries).build();
+    this.lastAggregates = Caffeine.newBuilder().maximumSize(MAX_AGGREGATES).build();
+    this.onStaleRead = onStaleRead;
+  }
+
+  /**
+   * Runs the reads of the current thread without the stale fallback
+   */
+  public static <T> T fresh(Supplier<T> read) {
+    Boolean previous = FRESH_ONLY.get();
+
+    FRESH_ONLY.set(Boolean.TRUE);
+
+    try {
+      return read.get();
+    } finally {
+      FRESH_ONLY.set(previous);
+    }
+  }
+
+  public CircuitBreaker getCircuitBreaker() {
+    return circuitBreaker;
+  }
+
+  public List<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>(circuitBreaker.metrics());
+    String prefix = "circuit." + circuitBreaker.getName() + ".";
+
+    metrics.add(new Metric<Long>(prefix + "stale.served", staleServed.sum()));
+    metrics.add(new Metric<Long>(prefix + "stale.entries", lastResults.estimatedSize() + lastAggregates.estimatedSize()));
+
+    return metrics;
+  }
+
+  @Override
+  public Item findOne(String id) {
+    return read(lastResults, Arrays.asList("findOne", id), stripe(id), () -> delegate.findOne(id));
+  }
+
+  @Override
+  public boolean exists(String id) {
+    return read(lastResults, Arrays.asList("exists", id), stripe(id), () -> delegate.exists(id));
+  }
+
+  @Override
+  public List<Item> findAll() {
+    return read(lastAggregates, Arrays.asList("findAll"), AGGREGATES, () -> delegate.findAll());
+  }
+
+  @Override
+  public List<Item> findAll(Sort sort) {
+    return read(lastAggregates, Arrays.asList("findAll", sort), AGGREGATES, () -> delegate.findAll(sort));
+  }
+
+  @Override
+  public Page<Item> findAll(Pageable pageable) {
+    return read(lastAggregates, Arrays.asList("findAll", pageable), AGGREGATES, () -> delegate.findAll(pageable));
+  }
+
+  @Override
+  public long count() {
+    return read(lastAggregates, Arrays.asList("count"), AGGREGATES, () -> delegate.count());
+  }
+
+  @Override
+  public Iterable<Item> findAll(Iterable<String> ids) {
+    return circuitBreaker.execute(() -> delegate.findAll(ids));
+  }
+
+  @Override
+  public <S extends Item> S findOne(Example<S> example) {
+    return circuitBreaker.execute(() -> delegate.findOne(example));
+  }
+
+  @Override
+  public <S extends Item> List<S> findAll(Example<S> example) {
+    return circuitBreaker.execute(() -> delegate.findAll(example));
+  }
+
+  @Override
+  public <S extends Item> List<S> findAll(Example<S> example, Sort sort) {
+    return circuitBreaker.execute(() -> delegate.findAll(example, sort));
+  }
+
+  @Override
+  public <S extends Item> Page<S> findAll(Example<S> example, Pageable pageable) {
+    return circuitBreaker.execute(() -> delegate.findAll(example, pageable));
+  }
+
+  @Override
+  public <S extends Item> long count(Example<S> example) {
+    return circuitBreaker.execute(() -> delegate.count(example));
+  }
+
+  @Override
+  public <S extends Item> boolean exists(Example<S> example) {
+    return circuitBreaker.execute(() -> delegate.exists(example));
+  }
+
+  @Override
+  public <S extends Item> S save(S entity) {
+    S saved = circuitBreaker.execute(() -> delegate.save(entity));
+
+    written(saved);
+    return saved;
+  }
+
+  @Override
+  public <S extends Item> List<S> save(Iterable<S> entities) {
+    List<S> saved = circuitBreaker.execute(() -> delegate.save(entities));
+
+    saved.forEach(this::written);
+    return saved;
+  }
+
+  @Override
+  public <S extends Item> S insert(S entity) {
+    S inserted = circuitBreaker.execute(() -> delegate.insert(entity));
+
+    written(inserted);
+    return inserted;
+  }
+
+  @Override
+  public <S extends Item> List<S> insert(Iterable<S> entities) {
+    List<S> inserted = circuitBreaker.execute(() -> delegate.insert(entities));
+
+    inserted.forEach(this::written);
+    return inserted;
+  }
+
+  @Override
+  public void delete(String id) {
+    circuitBreaker.execute(() -> {
+      delegate.delete(id);
+      return null;
+    });
+    deleted(id);
+  }
+
+  @Override
+  public void delete(Item entity) {
+    circuitBreaker.execute(() -> {
+      delegate.delete(entity);
+      return null;
+    });
+    deleted(entity.getId());
+  }
+
+  @Override
+  public void delete(Iterable<? extends Item> entities) {
+    circuitBreaker.execute(() -> {
+      delegate.delete(entities);
+      return null;
+    });
+    entities.forEach(entity -> deleted(entity.getId()));
+  }
+
+  @Override
+  public void deleteAll() {
+    circuitBreaker.execute(() -> {
+      delegate.deleteAll();
+      return null;
+    });
+    for (int slot = 0; slot < versions.length(); slot++) {
+      versions.incrementAndGet(slot);
+    }
+    lastResults.invalidateAll();
+    lastAggregates.invalidateAll();
+  }
+
+  /**
+   * The rank is not a field of Item, the results kept are still current
+   */
+  @Override
+  public int setItemRank(String item, int rank) {
+    return circuitBreaker.execute(() -> delegate.setItemRank(item, rank));
+  }
+
+  @Override
+  public int adjustQuantities(Map<String, Integer> deltas, String flushId) {
+    int matched = circuitBreaker.execute(() -> delegate.adjustQuantities(deltas, flushId));
+
+    // the new quantities are not returned, the results of these items are dropped
+    for (String id : deltas.keySet()) {
+      versions.incrementAndGet(stripe(id));
+      lastResults.invalidate(Arrays.asList("findOne", id));
+    }
+    versions.incrementAndGet(AGGREGATES);
+    lastAggregates.invalidateAll();
+    return matched;
+  }
+
+  private void written(Item item) {
+    versions.incrementAndGet(AGGREGATES);
+    if (item != null && item.getId() != null) {
+      versions.incrementAndGet(stripe(item.getId()));
+      lastResults.put(Arrays.asList("findOne", item.getId()), Optional.of(item));
+      lastResults.put(Arrays.asList("exists", item.getId()), Optional.of(Boolean.TRUE));
+    }
+    lastAggregates.invalidateAll();
+  }
+
+  private void deleted(String id) {
+    versions.incrementAndGet(AGGREGATES);
+    if (id != null) {
+      versions.incrementAndGet(stripe(id));
+      lastResults.put(Arrays.asList("findOne", id), Optional.empty());
+      lastResults.put(Arrays.asList("exists", id), Optional.of(Boolean.FALSE));
+    }
+    lastAggregates.invalidateAll();
+  }
+
+  /**
+   * null results are kept too (Optional), an item deleted before the outage stays deleted
+   * The result is kept within a compute of its key, after the version check : a write bumping the version afterwards
+   * puts its own result after it
+   */
+  @SuppressWarnings("unchecked")
+  private <T> T read(Cache<List<Object>, Optional<Object>> results, List<Object> key, int slot, Supplier<T> call) {
+    long version = versions.get(slot);
+
+    try {
+      T result = circuitBreaker.execute(call);
+
+      results.asMap().compute(key, (k, last) -> versions.get(slot) == version ? Optional.ofNullable(result) : last);
+      return result;
+    } catch (RuntimeException e) {
+      if (!(e instanceof CircuitOpenException) && !circuitBreaker.isFailure(e)) {
+        throw e;
+      }
+
+      Optional<Object> last = FRESH_ONLY.get() == null ? results.getIfPresent(key) : null;
+
+      if (last == null) {
+        throw e;
+      }
+
+      staleServed.increment();
+      onStaleRead.run();
+      return (T) last.orElse(null);
+    }
+  }
+
+  private static int stripe(String id) {
+    return id == null ? 0 : (id.hashCode() & Integer.MAX_VALUE) % AGGREGATES;
+  }
+
+  private static final ThreadLocal<Boolean> FRESH_ONLY = new ThreadLocal<Boolean>();
+  // findAll (plain, sorted, per page) and count, dropped by every write
+  private static final int MAX_AGGREGATES = 1000;
+  // versions of the item id stripes, followed by the version of the aggregates
+  private static final int AGGREGATES = 1024;
+
+  private final ItemRepository delegate;
+  private final CircuitBreaker circuitBreaker;
+  private final Cache<List<Object>, Optional<Object>> lastResults;
+  private final Cache<List<Object>, Optional<Object>> lastAggregates;
+  private final Runnable onStaleRead;
+  private final LongAdder staleServed = new LongAdder();
+  private final AtomicLongArray versions = new AtomicLongArray(AGGREGATES + 1);
+}
@@ -0,0 +1,412 @@
+package org.leo.boot.data.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+import org.leo.boot.data.model.Item;
+import org.leo.boot.data.sharding.ConsistentHashRing;
+import org.springframework.beans.support.PropertyComparator;
+import org.springframework.data.domain.Example;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.util.CloseableIterator;
+
+/**
+ * Item repository spreading items_collection over several MongoDB instances
+ * Single item operations are routed by consistent hash of the item id, collection wide operations
+ * (findAll, count, setItemRank...) fan out to every shard and merge the results
+ * Each shard is a regular Spring Data repository built on its own MongoTemplate, so the query logic stays in Spring Data
+ * @author fahdessid
+ */
+public class ShardedItemRepository implements ItemRepository {
+
+  public ShardedItemRepository(int virtualNodes, ExecutorService fanOutExecutor) {
+    this.ring = new ConsistentHashRing<Shard>(virtualNodes);
+    this.fanOutExecutor = fanOutExecutor;
+  }
+
+  /**
+   * Registers a new shard, the items it now owns stay on their former shard until rebalance() moves them
+   * (ItemShardingConfiguration calls it once every shard is added, when items.sharding.rebalance-on-startup=true)
+   */
+  public void addShard(String name, MongoTemplate mongoTemplate) {
+    ItemRepositoryImpl custom = new ItemRepositoryImpl();
+    custom.mongoTemplate = mongoTemplate;
+
+    ItemRepository repository = new MongoRepositoryFactory(mongoTemplate).getRepository(ItemRepository.class, custom);
+
+    ring.addNode(name, new Shard(name, mongoTemplate, repository));
+  }
+
+  /**
+   * Moves every item stored on a shard that no longer owns it according to the ring
+   * Each shard is read through a cursor on the ids only, an item is loaded when it has to move, so the collection is
+   * never held in memory and the items staying in place are not transferred
+   * @return the number of moved items
+   */
+  public int rebalance() {
+    int moved = 0;
+
+    for (Shard shard : ring.getNodes()) {
+      Query ids = new Query();
+      ids.fields().include("_id");
+
+      try (CloseableIterator<Item> cursor = shard.mongoTemplate.stream(ids, Item.class)) {
+        while (cursor.hasNext()) {
+          String id = cursor.next().getId();
+          Shard owner = ring.nodeFor(id);
+
+          if (owner != shard) {
+            Item item = shard.repository.findOne(id);
+
+            // deleted since the cursor read its id
+            if (item != null) {
+              owner.repository.save(item);
+              shard.repository.delete(id);
+              moved++;
+            }
+          }
+        }
+      }
+    }
+
+    return moved;
+  }
+
+  /**
+   * Items count per shard, to check the distribution
+   */
+  public Map<String, Long> countPerShard() {
+    List<Shard> shards = ring.getNodes();
+    List<Long> counts = fanOut(repository -> repository.count());
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+
+    for (int i = 0; i < shards.size(); i++) {
+      result.put(shards.get(i).name, counts.get(i));
+    }
+
+    return result;
+  }
+
+  @Override
+  public <S extends Item> S save(S entity) {
+    if (entity.getId() == null) {
+      // the id is needed to route the item, so it is generated here instead of by the driver
+      entity.setId(new ObjectId().toHexString());
+    }
+
+    return shardFor(entity.getId()).save(entity);
+  }
+
+  @Override
+  public <S extends Item> List<S> save(Iterable<S> entities) {
+    List<S> result = new ArrayList<S>();
+
+    for (S entity : entities) {
+      result.add(save(entity));
+    }
+
+    return result;
+  }
+
+  @Override
+  public <S extends Item> S insert(S entity) {
+    if (entity.getId() == null) {
+      entity.setId(new ObjectId().toHexString());
+    }
+
+    return shardFor(entity.getId()).insert(entity);
+  }
+
+  @Override
+  public <S extends Item> List<S> insert(Iterable<S> entities) {
+    List<S> result = new ArrayList<S>();
+
+    for (S entity : entities) {
+      result.add(insert(entity));
+    }
+
+    return result;
+  }
+
+  @Override
+  public Item findOne(String id) {
+    return shardFor(id).findOne(id);
+  }
+
+  @Override
+  public boolean exists(String id) {
+    return shardFor(id).exists(id);
+  }
+
+  @Override
+  public List<Item> findAll() {
+    return merge(fanOut(repository -> repository.findAll()));
+  }
+
+  @Override
+  public List<Item> findAll(Sort sort) {
+    List<Item> items = merge(fanOut(repository -> repository.findAll(sort)));
+
+    sortItems(items, sort);
+    return items;
+  }
+
+  @Override
+  public Page<Item> findAll(Pageable pageable) {
+    // every shard returns its first offset + size items, the global page is cut from the merged list
+    Pageable head = new PageRequest(0, pageable.getOffset() + pageable.getPageSize(), pageable.getSort());
+    List<Page<Item>> pages = fanOut(repository -> repository.findAll(head));
+    List<Item> items = new ArrayList<Item>();
+    long total = 0;
+
+    for (Page<Item> page : pages) {
+      items.addAll(page.getContent());
+      total += page.getTotalElements();
+    }
+
+    sortItems(items, pageable.getSort());
+    return new PageImpl<Item>(slice(items, pageable), pageable, total);
+  }
+
+  @Override
+  public Iterable<Item> findAll(Iterable<String> ids) {
+    List<Item> items = new ArrayList<Item>();
+
+    for (String id : ids) {
+      Item item = findOne(id);
+
+      if (item != null) {
+        items.add(item);
+      }
+    }
+
+    return items;
+  }
+
+  @Override
+  public <S extends Item> S findOne(Example<S> example) {
+    for (S item : fanOut(repository -> repository.findOne(example))) {
+      if (item != null) {
+        return item;
+      }
+    }
+
+    return null;
+  }
+
+  @Override
+  public <S extends Item> List<S> findAll(Example<S> example) {
+    return merge(fanOut(repository -> repository.findAll(example)));
+  }
+
+  @Override
+  public <S extends Item> List<S> findAll(Example<S> example, Sort sort) {
+    List<S> items = merge(fanOut(repository -> repository.findAll(example, sort)));
+
+    sortItems(items, sort);
+    return items;
+  }
+
+  @Override
+  public <S extends Item> Page<S> findAll(Example<S> example, Pageable pageable) {
+    Pageable head = new PageRequest(0, pageable.getOffset() + pageable.getPageSize(), pageable.getSort());
+    List<Page<S>> pages = fanOut(repository -> repository.findAll(example, head));
+    List<S> items = new ArrayList<S>();
+    long total = 0;
+
+    for (Page<S> page : pages) {
+      items.addAll(page.getContent());
+      total += page.getTotalElements();
+    }
+
+    sortItems(items, pageable.getSort());
+    return new PageImpl<S>(slice(items, pageable), pageable, total);
+  }
+
+  @Override
+  public long count() {
+    long count = 0;
+
+    for (Long shardCount : fanOut(repository -> repository.count())) {
+      count += shardCount;
+    }
+
+    return count;
+  }
+
+  @Override
+  public <S extends Item> long count(Example<S> example) {
+    long count = 0;
+
+    for (Long shardCount : fanOut(repository -> repository.count(example))) {
+      count += shardCount;
+    }
+
+    return count;
+  }
+
+  @Override
+  public <S extends Item> boolean exists(Example<S> example) {
+    return fanOut(repository -> repository.exists(example)).contains(Boolean.TRUE);
+  }
+
+  @Override
+  public void delete(String id) {
+    shardFor(id).delete(id);
+  }
+
+  @Override
+  public void delete(Item entity) {
+    shardFor(entity.getId()).delete(entity);
+  }
+
+  @Override
+  public void delete(Iterable<? extends Item> entities) {
+    for (Item entity : entities) {
+      delete(entity);
+    }
+  }
+
+  @Override
+  public void deleteAll() {
+    fanOut(repository -> {
+      repository.deleteAll();
+      return null;
+    });
+  }
+
+  /**
+   * The rank is set by item name, which says nothing about the owning shard, so every shard is asked
+   */
+  @Override
+  public int setItemRank(String item, int rank) {
+    int updated = 0;
+
+    for (Integer shardUpdated : fanOut(repository -> repository.setItemRank(item, rank))) {
+      updated += shardUpdated;
+    }
+
+    return updated;
+  }
+
+  /**
+   * Deltas are grouped by owning shard so each shard receives a single bulk write
+   */
+  @Override
+  public int adjustQuantities(Map<String, Integer> deltas, String flushId) {
+    Map<Shard, Map<String, Integer>> perShard = new HashMap<Shard, Map<String, Integer>>();
+
+    for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+      perShard.computeIfAbsent(ring.nodeFor(delta.getKey()), shard -> new HashMap<String, Integer>())
+        .put(delta.getKey(), delta.getValue());
+    }
+
+    int matched = 0;
+
+    for (Map.Entry<Shard, Map<String, Integer>> shardDeltas : perShard.entrySet()) {
+      matched += shardDeltas.getKey().repository.adjustQuantities(shardDeltas.getValue(), flushId);
+    }
+
+    return matched;
+  }
+
+  private ItemRepository shardFor(String id) {
+    return ring.nodeFor(id).repository;
+  }
+
+  /**
+   * Runs the call on every shard in parallel and returns the results in shard order
+   */
+  private <R> List<R> fanOut(Function<ItemRepository, R> call) {
+    List<Shard> shards = ring.getNodes();
+    List<Future<R>> futures = new ArrayList<Future<R>>(shards.size());
+
+    for (Shard shard : shards) {
+      futures.add(fanOutExecutor.submit(() -> call.apply(shard.repository)));
+    }
+
+    List<R> results = new ArrayList<R>(shards.size());
+
+    try {
+      for (Future<R> future : futures) {
+        results.add(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while querying the item shards", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Item shard query failed", e.getCause());
+    }
+
+    return results;
+  }
+
+  private static <S> List<S> merge(List<? extends Iterable<S>> results) {
+    List<S> merged = new ArrayList<S>();
+
+    for (Iterable<S> result : results) {
+      for (S item : result) {
+        merged.add(item);
+      }
+    }
+
+    return merged;
+  }
+
+  private static <S> List<S> slice(List<S> items, Pageable pageable) {
+    int from = Math.min(pageable.getOffset(), items.size());
+    int to = Math.min(from + pageable.getPageSize(), items.size());
+
+    return new ArrayList<S>(items.subList(from, to));
+  }
+
+  private static void sortItems(List<? extends Item> items, Sort sort) {
+    if (sort == null) {
+      return;
+    }
+
+    Comparator<Item> comparator = null;
+
+    for (Sort.Order order : sort) {
+      Comparator<Item> next = new PropertyComparator<Item>(order.getProperty(), order.isIgnoreCase(), order.isAscending());
+      comparator = comparator == null ? next : comparator.thenComparing(next);
+    }
+
+    if (comparator != null) {
+      Collections.sort(items, comparator);
+    }
+  }
+
+  private static class Shard {
+
+    Shard(String name, MongoTemplate mongoTemplate, ItemRepository repository) {
+      this.name = name;
+      this.mongoTemplate = mongoTemplate;
+      this.repository = repository;
+    }
+
+    private final String name;
+    private final MongoTemplate mongoTemplate;
+    private final ItemRepository repository;
+  }
+
+  private final ConsistentHashRing<Shard> ring;
+  private final ExecutorService fanOutExecutor;
+}
@@ -1,7 +1,14 @@
 package org.leo.boot.data.repository;
 
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
 import org.leo.boot.data.model.User;
+import org.leo.boot.data.model.UserSummary;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
 /**
@@ -11,5 +18,21 @@ import org.springframework.stereotype.Repository;
 @Repository("userRepository")
 public interface UserRepository extends JpaRepository<User, String> {
   
+  /**
+   * Result kept in the query cache, invalidated by hibernate whenever the user table is written through JPA
+   */
+  @QueryHints(@QueryHint(name = "org.hibernate.cacheable", value = "true"))
   User findByEmail(String email);
+
+  /**
+   * Only the name, last name and email columns, no entity and no roles loaded
+   */
+  @Query("select new org.leo.boot.data.model.UserSummary(u.name, u.lastName, u.email) from User u where u.email = ?1")
+  UserSummary findSummaryByEmail(String email);
+
+  /**
+   * Emails only, streamed : must be consumed inside a transaction and closed
+   */
+  @Query("select u.email from User u")
+  Stream<String> streamAllEmails();
 }
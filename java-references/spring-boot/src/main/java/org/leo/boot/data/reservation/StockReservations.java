@@ -0,0 +1,340 @@
+package org.leo.boot.data.reservation;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * In memory stock reservation engine for hot items
+ *
+ * Every item gets a counter loaded once from the store, split in stripes so concurrent checkouts on the same item
+ * do not all CAS the same memory word. A stripe never goes below zero, so the sum of stripes can never go below zero
+ * either : an item cannot be oversold, a reservation is either fully taken or fully rolled back
+ *
+ * reserve takes stock from the counter, release gives it back, confirm turns it into a sale whose quantity is
+ * accumulated in a pending delta. flush() sends all pending deltas to the store in one batch, so the store sees
+ * one write per item per flush instead of one write per reservation
+ *
+ * A batch carries a flush id, the writer applies a delta once per flush id. A failed batch is retried as it is, with
+ * its id, before any newer delta is sent : the deltas a failed write did apply (partial bulk, shard, or timed out
+ * write that committed) are not applied twice
+ *
+ * While the engine runs it is the authority on stock of the items it has loaded : a single node owns the stock,
+ * several instances would each sell the whole stock. Writes of the item made through this node are taken into
+ * account with reload(), others are only seen after a restart
+ * @author fahdessid
+ */
+public class StockReservations {
+
+  /**
+   * @param deltaWriter called with the flush id and the deltas, applies each delta once per flush id
+   */
+  public StockReservations(Function<String, Integer> stockLoader, BiConsumer<String, Map<String, Integer>> deltaWriter, int stripes, long reservationTtlMillis) {
+    this.stockLoader = stockLoader;
+    this.deltaWriter = deltaWriter;
+    this.stripes = stripes;
+    this.reservationTtlMillis = reservationTtlMillis;
+  }
+
+  /**
+   * @return the reservation id, or null if there is not enough stock left
+   */
+  public String reserve(String itemId, int quantity) {
+    if (quantity <= 0) {
+      throw new IllegalArgumentException("quantity must be positive");
+    }
+
+    StockCounter counter = counter(itemId);
+
+    if (counter == null || !counter.take(quantity)) {
+      return null;
+    }
+
+    // random (SecureRandom backed), the id is all a client needs to confirm or release the reservation
+    String reservationId = UUID.randomUUID().toString();
+    reservations.put(reservationId, new Reservation(itemId, quantity, System.currentTimeMillis() + reservationTtlMillis));
+
+    return reservationId;
+  }
+
+  /**
+   * Turns the reservation into a sale, persisted at the next flush
+   * @return false if the reservation does not exist anymore (already confirmed, released or expired)
+   */
+  public boolean confirm(String reservationId) {
+    Reservation reservation = reservations.remove(reservationId);
+
+    if (reservation == null) {
+      return false;
+    }
+
+    counters.get(reservation.itemId).pendingDelta.addAndGet(-reservation.quantity);
+    return true;
+  }
+
+  /**
+   * Gives the reserved quantity back to the available stock
+   * @return false if the reservation does not exist anymore
+   */
+  public boolean release(String reservationId) {
+    Reservation reservation = reservations.remove(reservationId);
+
+    if (reservation == null) {
+      return false;
+    }
+
+    counters.get(reservation.itemId).give(reservation.quantity);
+    return true;
+  }
+
+  /**
+   * Releases the reservations older than the ttl, abandoned carts would otherwise lock stock forever
+   */
+  public int releaseExpired() {
+    long now = System.currentTimeMillis();
+    int released = 0;
+
+    for (Iterator<Map.Entry<String, Reservation>> it = reservations.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, Reservation> entry = it.next();
+
+      if (entry.getValue().expiresAt < now && reservations.remove(entry.getKey(), entry.getValue())) {
+        counters.get(entry.getValue().itemId).give(entry.getValue().quantity);
+        released++;
+      }
+    }
+
+    return released;
+  }
+
+  /**
+   * Sends every pending delta to the store in a single batch
+   * If the write fails the batch is kept and retried first at the next flush, with the same flush id
+   * @return the number of items written
+   */
+  public synchronized int flush() {
+    int written = 0;
+
+    if (unacknowledged != null) {
+      deltaWriter.accept(unacknowledged.flushId, unacknowledged.deltas);
+      written += unacknowledged.deltas.size();
+      unacknowledged = null;
+    }
+
+    Map<String, Integer> deltas = new HashMap<String, Integer>();
+
+    for (Map.Entry<String, StockCounter> entry : counters.entrySet()) {
+      int delta = entry.getValue().pendingDelta.getAndSet(0);
+
+      if (delta != 0) {
+        deltas.put(entry.getKey(), delta);
+      }
+    }
+
+    if (deltas.isEmpty()) {
+      return written;
+    }
+
+    unacknowledged = new Batch(UUID.randomUUID().toString(), deltas);
+    deltaWriter.accept(unacknowledged.flushId, deltas);
+    unacknowledged = null;
+
+    return written + deltas.size();
+  }
+
+  /**
+   * The item was written with this quantity : the available stock becomes that quantity, minus the sales not flushed
+   * yet (they are applied on top of it) and the reservations still held. Does nothing if the item is not loaded
+   */
+  public void reload(String itemId, int quantity) {
+    StockCounter counter = counters.get(itemId);
+
+    if (counter == null) {
+      return;
+    }
+
+    int available = quantity + counter.pendingDelta.get();
+    Batch batch = unacknowledged;
+
+    if (batch != null && batch.deltas.containsKey(itemId)) {
+      available += batch.deltas.get(itemId);
+    }
+    for (Reservation reservation : reservations.values()) {
+      if (reservation.itemId.equals(itemId)) {
+        available -= reservation.quantity;
+      }
+    }
+
+    counter.reset(Math.max(0, available));
+  }
+
+  public int available(String itemId) {
+    StockCounter counter = counter(itemId);
+
+    return counter == null ? 0 : counter.available();
+  }
+
+  public int pendingReservations() {
+    return reservations.size();
+  }
+
+  private StockCounter counter(String itemId) {
+    StockCounter counter = counters.get(itemId);
+
+    if (counter != null) {
+      return counter;
+    }
+
+    Integer quantity = stockLoader.apply(itemId);
+
+    if (quantity == null) {
+      return null;
+    }
+
+    StockCounter loaded = new StockCounter(Math.max(0, quantity), stripes);
+    counter = counters.putIfAbsent(itemId, loaded);
+
+    return counter != null ? counter : loaded;
+  }
+
+  /**
+   * Striped non negative counter, each stripe sits on its own cache line to avoid false sharing
+   */
+  static final class StockCounter {
+
+    StockCounter(int quantity, int count) {
+      this.count = count;
+      this.values = new AtomicIntegerArray(count * PADDING);
+
+      for (int i = 0; i < count; i++) {
+        values.set(i * PADDING, quantity / count + (i < quantity % count ? 1 : 0));
+      }
+    }
+
+    /**
+     * Takes the quantity starting from the stripe of the current thread and borrowing from the others when needed
+     * If the stripes do not hold enough stock together, what was taken is given back
+     */
+    boolean take(int quantity) {
+      int start = stripe();
+      int taken = 0;
+
+      for (int i = 0; i < count && taken < quantity; i++) {
+        int slot = ((start + i) % count) * PADDING;
+
+        for (;;) {
+          int current = values.get(slot);
+
+          if (current == 0) {
+            break;
+          }
+
+          int grab = Math.min(current, quantity - taken);
+
+          if (values.compareAndSet(slot, current, current - grab)) {
+            taken += grab;
+            break;
+          }
+        }
+      }
+
+      if (taken < quantity) {
+        if (taken > 0) {
+          give(taken);
+        }
+        return false;
+      }
+
+      return true;
+    }
+
+    void give(int quantity) {
+      values.addAndGet(stripe() * PADDING, quantity);
+    }
+
+    /**
+     * Brings the available stock to the quantity, concurrent takes and gives are applied on top of it
+     */
+    void reset(int quantity) {
+      int difference = quantity - available();
+
+      if (difference > 0) {
+        give(difference);
+      }
+
+      for (int i = 0; i < count && difference < 0; i++) {
+        int slot = i * PADDING;
+
+        for (;;) {
+          int current = values.get(slot);
+          int drop = Math.min(current, -difference);
+
+          if (drop == 0 || values.compareAndSet(slot, current, current - drop)) {
+            difference += drop;
+            break;
+          }
+        }
+      }
+    }
+
+    int available() {
+      int sum = 0;
+
+      for (int i = 0; i < count; i++) {
+        sum += values.get(i * PADDING);
+      }
+
+      return sum;
+    }
+
+    private int stripe() {
+      return (int) (Thread.currentThread().getId() % count);
+    }
+
+    // 16 ints are 64 bytes, the usual cache line size
+    private static final int PADDING = 16;
+
+    private final int count;
+    private final AtomicIntegerArray values;
+    private final AtomicInteger pendingDelta = new AtomicInteger();
+  }
+
+  private static final class Batch {
+
+    Batch(String flushId, Map<String, Integer> deltas) {
+      this.flushId = flushId;
+      this.deltas = deltas;
+    }
+
+    private final String flushId;
+    private final Map<String, Integer> deltas;
+  }
+
+  private static final class Reservation {
+
+    Reservation(String itemId, int quantity, long expiresAt) {
+      this.itemId = itemId;
+      this.quantity = quantity;
+      this.expiresAt = expiresAt;
+    }
+
+    private final String itemId;
+    private final int quantity;
+    private final long expiresAt;
+  }
+
+  private final Function<String, Integer> stockLoader;
+  private final BiConsumer<String, Map<String, Integer>> deltaWriter;
+  private final int stripes;
+  private final long reservationTtlMillis;
+  private final ConcurrentMap<String, StockCounter> counters = new ConcurrentHashMap<String, StockCounter>();
+  private final ConcurrentMap<String, Reservation> reservations = new ConcurrentHashMap<String, Reservation>();
+  // the batch being written or whose write failed, retried before any other
+  private volatile Batch unacknowledged;
+}
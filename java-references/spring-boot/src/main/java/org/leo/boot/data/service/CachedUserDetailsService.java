@@ -0,0 +1,116 @@
+package org.leo.boot.data.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.leo.boot.data.jdbc.ReadYourWrites;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.core.userdetails.jdbc.JdbcDaoImpl;
+import org.springframework.stereotype.Service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * UserDetailsService used by Spring Security to authenticate users
+ * It runs the same spring.queries.users-query and roles-query than jdbcAuthentication() but keeps the result in a
+ * bounded cache with a time to live, so a login storm does not turn into a query storm on MySQL
+ * Entries are evicted on RolesChangedEvent : the users whose roles were assigned (saved or imported users), or all of
+ * them when the Role table changed
+ * @author fahdessid
+ */
+@Service
+public class CachedUserDetailsService implements UserDetailsService, PublicMetrics {
+
+  @PostConstruct
+  public void init() throws Exception {
+    delegate = new JdbcDaoImpl();
+    delegate.setDataSource(dataSource);
+    delegate.setUsersByUsernameQuery(usersQuery);
+    delegate.setAuthoritiesByUsernameQuery(rolesQuery);
+    delegate.afterPropertiesSet();
+
+    cache = Caffeine.newBuilder()
+        .maximumSize(maximumSize)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Unknown users are not cached : the exception thrown by the loader leaves the cache untouched
+   * The queries run without transaction, they are sent to the replica when the read / write split is enabled
+   * The key is lower cased : the email is matched whatever its case, and evicted whatever the case it was typed in
+   */
+  @Override
+  public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+    UserDetails user = cache.get(key(username), key -> ReadYourWrites.onReplica(() -> delegate.loadUserByUsername(username)));
+
+    // Spring Security erases the password of the authenticated principal, so the cached instance is never handed out
+    return new User(user.getUsername(), user.getPassword(), user.isEnabled(), user.isAccountNonExpired(),
+        user.isCredentialsNonExpired(), user.isAccountNonLocked(), user.getAuthorities());
+  }
+
+  @EventListener
+  public void onRolesChanged(RolesChangedEvent event) {
+    if (event.getUsernames() == null) {
+      cache.invalidateAll();
+    } else {
+      for (String username : event.getUsernames()) {
+        cache.invalidate(key(username));
+      }
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    CacheStats stats = cache.stats();
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("cache.userdetails.size", cache.estimatedSize()));
+    metrics.add(new Metric<Long>("cache.userdetails.hits", stats.hitCount()));
+    metrics.add(new Metric<Long>("cache.userdetails.misses", stats.missCount()));
+    metrics.add(new Metric<Double>("cache.userdetails.hit.ratio", stats.hitRate()));
+    metrics.add(new Metric<Long>("cache.userdetails.evictions", stats.evictionCount()));
+
+    return metrics;
+  }
+
+  private static String key(String username) {
+    return username.toLowerCase(Locale.ROOT);
+  }
+
+  private JdbcDaoImpl delegate;
+
+  private Cache<String, UserDetails> cache;
+
+  @Autowired
+  private DataSource dataSource;
+
+  @Value("${spring.queries.users-query}")
+  private String usersQuery;
+
+  @Value("${spring.queries.roles-query}")
+  private String rolesQuery;
+
+  @Value("${users.details-cache.maximum-size:10000}")
+  private long maximumSize;
+
+  @Value("${users.details-cache.ttl-seconds:300}")
+  private long ttlSeconds;
+}
@@ -0,0 +1,160 @@
+package org.leo.boot.data.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+
+import org.leo.boot.data.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bloom filter of the registered emails
+ * "No" is always right, "maybe" has to be confirmed by a query : almost every email checked at registration is new,
+ * so almost every check is answered without touching the database
+ * Bits are set with CAS only, adding an email never blocks a concurrent check
+ * Emails are lower cased because the MySQL collation compares them case insensitively
+ * @author fahdessid
+ */
+@Service
+public class EmailBloomFilter implements PublicMetrics {
+
+  @PostConstruct
+  public void load() {
+    long expected = Math.max(expectedEmails, userRepository.count() * 2);
+
+    bitCount = optimalBitCount(expected, falsePositiveRate);
+    hashCount = Math.max(1, (int) Math.round((double) bitCount / expected * Math.log(2)));
+    bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+
+    transactionTemplate.execute(status -> {
+      try (Stream<String> emails = userRepository.streamAllEmails()) {
+        emails.forEach(this::put);
+      }
+      return null;
+    });
+  }
+
+  public void put(String email) {
+    long[] hashes = hashes(email);
+
+    for (int i = 0; i < hashCount; i++) {
+      long bit = index(hashes, i);
+      int word = (int) (bit >>> 6);
+      long mask = 1L << bit;
+
+      for (;;) {
+        long current = bits.get(word);
+
+        if ((current & mask) != 0 || bits.compareAndSet(word, current, current | mask)) {
+          break;
+        }
+      }
+    }
+    insertions.incrementAndGet();
+  }
+
+  public boolean mightContain(String email) {
+    long[] hashes = hashes(email);
+
+    for (int i = 0; i < hashCount; i++) {
+      long bit = index(hashes, i);
+
+      if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+        negatives.incrementAndGet();
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Called when a "maybe" was not confirmed by the database, to measure the real false positive rate
+   */
+  public void recordFalsePositive() {
+    falsePositives.incrementAndGet();
+  }
+
+  /**
+   * Theoretical false positive rate for the current number of insertions : (1 - e^(-k.n/m))^k
+   */
+  public double expectedFalsePositiveRate() {
+    return Math.pow(1 - Math.exp(-(double) hashCount * insertions.get() / bitCount), hashCount);
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("bloom.emails.insertions", insertions.get()));
+    metrics.add(new Metric<Long>("bloom.emails.negatives", negatives.get()));
+    metrics.add(new Metric<Long>("bloom.emails.false.positives", falsePositives.get()));
+    metrics.add(new Metric<Double>("bloom.emails.false.positive.rate.expected", expectedFalsePositiveRate()));
+    metrics.add(new Metric<Long>("bloom.emails.memory.bytes", bits.length() * 8L));
+    metrics.add(new Metric<Integer>("bloom.emails.hash.functions", hashCount));
+
+    return metrics;
+  }
+
+  /**
+   * m = -n.ln(p) / ln(2)^2
+   */
+  private static long optimalBitCount(long expected, double falsePositiveRate) {
+    return Math.max(64, (long) (-expected * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+  }
+
+  /**
+   * Double hashing : the k indexes are h1 + i.h2, computed from two 64 bits hashes of the email
+   */
+  private long index(long[] hashes, int i) {
+    return ((hashes[0] + i * hashes[1]) & Long.MAX_VALUE) % bitCount;
+  }
+
+  private static long[] hashes(String email) {
+    byte[] bytes = email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    long h1 = 0xcbf29ce484222325L;
+
+    // FNV-1a, then a splitmix64 finalizer of it as the second hash
+    for (byte b : bytes) {
+      h1 ^= b & 0xFF;
+      h1 *= 0x100000001b3L;
+    }
+
+    long h2 = h1 + 0x9E3779B97F4A7C15L;
+    h2 = (h2 ^ (h2 >>> 30)) * 0xBF58476D1CE4E5B9L;
+    h2 = (h2 ^ (h2 >>> 27)) * 0x94D049BB133111EBL;
+    h2 = h2 ^ (h2 >>> 31);
+
+    return new long[] {h1, h2 | 1};
+  }
+
+  private volatile AtomicLongArray bits;
+  private volatile long bitCount;
+  private volatile int hashCount;
+  private final AtomicLong insertions = new AtomicLong();
+  private final AtomicLong negatives = new AtomicLong();
+  private final AtomicLong falsePositives = new AtomicLong();
+
+  @Autowired
+  private UserRepository userRepository;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Value("${users.email-filter.expected-emails:1000000}")
+  private long expectedEmails;
+
+  @Value("${users.email-filter.false-positive-rate:0.01}")
+  private double falsePositiveRate;
+}
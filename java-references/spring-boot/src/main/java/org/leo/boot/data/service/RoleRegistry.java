@@ -0,0 +1,73 @@
+package org.leo.boot.data.service;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.leo.boot.data.model.Role;
+import org.leo.boot.data.repository.RoleRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+/**
+ * In memory registry of the roles, name to id
+ * The Role table almost never changes, so it is read once at startup and again only on a RolesChangedEvent for the
+ * whole table
+ * reference() hands out a JPA reference built from the id : assigning it to a user costs no query
+ * @author fahdessid
+ */
+@Service
+public class RoleRegistry {
+
+  @PostConstruct
+  public void load() {
+    Map<String, Integer> loaded = new HashMap<String, Integer>();
+
+    for (Role role : roleRepository.findAll()) {
+      loaded.put(role.getRole(), role.getId());
+    }
+
+    roleIds = Collections.unmodifiableMap(loaded);
+  }
+
+  @EventListener
+  public void onRolesChanged(RolesChangedEvent event) {
+    if (event.getUsernames() != null) {
+      // user_role assignments only, the roles are the same
+      return;
+    }
+
+    entityManager.getEntityManagerFactory().getCache().evict(Role.class);
+    load();
+  }
+
+  /**
+   * Must be called inside the transaction using the reference, it is bound to the current persistence context
+   */
+  public Role reference(String role) {
+    Integer id = roleIds.get(role);
+
+    if (id == null) {
+      throw new IllegalStateException("Unknown role " + role);
+    }
+
+    return entityManager.getReference(Role.class, id);
+  }
+
+  public Map<String, Integer> getRoleIds() {
+    return roleIds;
+  }
+
+  private volatile Map<String, Integer> roleIds = Collections.emptyMap();
+
+  @PersistenceContext
+  private EntityManager entityManager;
+
+  @Autowired
+  private RoleRepository roleRepository;
+}
@@ -0,0 +1,36 @@
+package org.leo.boot.data.service;
+
+import java.util.Collection;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published after the Role table or the user_role assignments were modified,
+ * so every component holding roles in memory can drop them
+ * With usernames, only the user_role rows of these users changed (saveUser, importUsers), without, the Role table
+ * itself did. The application has no code editing the Role table : roles edited directly in MySQL are picked up
+ * by the user details cache after its TTL, and by the RoleRegistry at the next restart
+ * @author fahdessid
+ */
+public class RolesChangedEvent extends ApplicationEvent {
+
+  private static final long serialVersionUID = 1L;
+
+  public RolesChangedEvent(Object source) {
+    this(source, null);
+  }
+
+  public RolesChangedEvent(Object source, Collection<String> usernames) {
+    super(source);
+    this.usernames = usernames;
+  }
+
+  /**
+   * @return null when the Role table changed, all users are concerned
+   */
+  public Collection<String> getUsernames() {
+    return usernames;
+  }
+
+  private final Collection<String> usernames;
+}
@@ -0,0 +1,22 @@
+package org.leo.boot.data.service;
+
+import lombok.Data;
+
+/**
+ * Outcome of a bulk user import
+ * insertedRows counts the user rows and the user_role rows
+ * @author fahdessid
+ */
+@Data
+public class UserImportReport {
+
+  private int imported;
+  private int skipped;
+  private int rejected;
+  private long insertedRows;
+  private long durationMillis;
+
+  public long getRowsPerSecond() {
+    return durationMillis == 0 ? insertedRows : insertedRows * 1000L / durationMillis;
+  }
+}
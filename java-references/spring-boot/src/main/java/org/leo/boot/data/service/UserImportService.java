@@ -0,0 +1,14 @@
+package org.leo.boot.data.service;
+
+import java.util.List;
+
+import org.leo.boot.data.model.User;
+
+/**
+ * Bulk import of users, for onboarding a whole tenant at once
+ * @author fahdessid
+ */
+public interface UserImportService {
+
+  public UserImportReport importUsers(List<User> users);
+}
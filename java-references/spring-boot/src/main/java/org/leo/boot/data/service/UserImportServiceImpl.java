@@ -0,0 +1,274 @@
+package org.leo.boot.data.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import javax.validation.Validator;
+
+import org.hibernate.SessionFactory;
+import org.leo.boot.data.model.User;
+import org.leo.boot.security.BoundedPasswordEncoder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Bulk user import implementation
+ * Users are processed by chunks : the passwords of a chunk are hashed in parallel on a dedicated bounded pool,
+ * then the chunk is written in one transaction with JDBC batch inserts.
+ * Plain JDBC is used because Hibernate disables insert batching for IDENTITY generated ids (user_id is AUTO_INCREMENT)
+ * Users already registered, or present twice in the import, are skipped, users failing validation are rejected
+ * @author fahdessid
+ */
+@Service
+public class UserImportServiceImpl implements UserImportService {
+
+  @PostConstruct
+  public void init() {
+    int threads = hashingThreads > 0 ? hashingThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    // caller runs when the queue is full : the importing thread hashes too, which throttles the submission
+    hashingExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(chunkSize), new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    hashingExecutor.shutdownNow();
+  }
+
+  @Override
+  public UserImportReport importUsers(List<User> users) {
+    UserImportReport report = new UserImportReport();
+    long start = System.currentTimeMillis();
+    Integer roleId = roleRegistry.getRoleIds().get("ADMIN");
+
+    if (roleId == null) {
+      throw new IllegalStateException("Role ADMIN not found in the role table, users cannot be imported without it");
+    }
+
+    try {
+      importChunks(users, roleId, report);
+    } finally {
+      // rows inserted with plain JDBC are unknown to hibernate : cached "no such email" query results must go,
+      // also when a chunk failed after others were committed
+      entityManagerFactory.getCache().evict(User.class);
+      entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegions();
+    }
+
+    report.setDurationMillis(System.currentTimeMillis() - start);
+    return report;
+  }
+
+  private void importChunks(List<User> users, int roleId, UserImportReport report) {
+    Set<String> seenEmails = new HashSet<String>();
+
+    for (int from = 0; from < users.size(); from += chunkSize) {
+      List<User> chunk = new ArrayList<User>();
+
+      for (User user : users.subList(from, Math.min(from + chunkSize, users.size()))) {
+        if (!validator.validate(user).isEmpty()) {
+          report.setRejected(report.getRejected() + 1);
+        } else if (!seenEmails.add(normalize(user.getEmail()))) {
+          report.setSkipped(report.getSkipped() + 1);
+        } else {
+          chunk.add(user);
+        }
+      }
+
+      Set<String> existing = existingEmails(chunk);
+      List<User> toInsert = new ArrayList<User>();
+
+      for (User user : chunk) {
+        if (existing.contains(normalize(user.getEmail()))) {
+          report.setSkipped(report.getSkipped() + 1);
+        } else {
+          toInsert.add(user);
+        }
+      }
+
+      hashPasswords(toInsert);
+      report.setInsertedRows(report.getInsertedRows() + insertChunk(toInsert, roleId, report));
+      report.setImported(report.getImported() + toInsert.size());
+
+      List<String> imported = new ArrayList<String>(toInsert.size());
+
+      for (User user : toInsert) {
+        emailBloomFilter.put(user.getEmail());
+        imported.add(user.getEmail());
+      }
+      // a failed login before the import is not cached, but the committed user_role rows are announced all the same
+      if (!imported.isEmpty()) {
+        eventPublisher.publishEvent(new RolesChangedEvent(this, imported));
+      }
+    }
+  }
+
+  private Set<String> existingEmails(List<User> chunk) {
+    if (chunk.isEmpty()) {
+      return Collections.emptySet();
+    }
+
+    List<String> emails = new ArrayList<String>(chunk.size());
+
+    for (User user : chunk) {
+      emails.add(user.getEmail());
+    }
+
+    Set<String> existing = new HashSet<String>();
+
+    for (String email : namedParameterJdbcTemplate.queryForList("select email from user where email in (:emails)",
+        new MapSqlParameterSource("emails", emails), String.class)) {
+      existing.add(normalize(email));
+    }
+
+    return existing;
+  }
+
+  /**
+   * The unique index on user.email is case insensitive (MySQL collation), the duplicates are found the same way
+   */
+  private static String normalize(String email) {
+    return email.toLowerCase(Locale.ROOT);
+  }
+
+  private void hashPasswords(List<User> chunk) {
+    PasswordEncoder encoder = passwordEncoder.getDelegate();
+    List<Future<String>> hashes = new ArrayList<Future<String>>(chunk.size());
+
+    for (User user : chunk) {
+      String rawPassword = user.getPassword();
+      hashes.add(hashingExecutor.submit((Callable<String>) () -> encoder.encode(rawPassword)));
+    }
+
+    try {
+      for (int i = 0; i < chunk.size(); i++) {
+        chunk.get(i).setPassword(hashes.get(i).get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while hashing imported passwords", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Password hashing failed", e.getCause());
+    }
+  }
+
+  /**
+   * One transaction per chunk : a failure only rolls back the current chunk and keeps transactions short
+   * user_role rows are resolved by email so the generated user ids never need to be read back
+   * Emails registered since they were checked make the chunk fail on the unique index : the chunk is rolled back,
+   * the emails now registered are removed from it and counted as skipped, and the rest is inserted again
+   */
+  private int insertChunk(List<User> chunk, int roleId, UserImportReport report) {
+    for (;;) {
+      try {
+        return insertChunk(chunk, roleId);
+      } catch (DuplicateKeyException e) {
+        Set<String> registered = existingEmails(chunk);
+
+        if (registered.isEmpty()) {
+          throw e;
+        }
+
+        for (Iterator<User> it = chunk.iterator(); it.hasNext();) {
+          if (registered.contains(normalize(it.next().getEmail()))) {
+            it.remove();
+            report.setSkipped(report.getSkipped() + 1);
+          }
+        }
+      }
+    }
+  }
+
+  private int insertChunk(List<User> chunk, int roleId) {
+    if (chunk.isEmpty()) {
+      return 0;
+    }
+
+    List<Object[]> userRows = new ArrayList<Object[]>(chunk.size());
+    List<Object[]> roleRows = new ArrayList<Object[]>(chunk.size());
+
+    for (User user : chunk) {
+      userRows.add(new Object[] {user.getEmail(), user.getPassword(), user.getName(), user.getLastName(), 1});
+      roleRows.add(new Object[] {roleId, user.getEmail()});
+    }
+
+    return transactionTemplate.execute(status -> {
+      int rows = 0;
+
+      rows += sum(jdbcTemplate.batchUpdate("insert into user (email, password, name, last_name, active) values (?, ?, ?, ?, ?)", userRows));
+      rows += sum(jdbcTemplate.batchUpdate("insert into user_role (user_id, role_id) select user_id, ? from user where email = ?", roleRows));
+
+      return rows;
+    });
+  }
+
+  /**
+   * The MySQL driver reports SUCCESS_NO_INFO (-2) for rewritten batches, counted as one row
+   */
+  private static int sum(int[] counts) {
+    int sum = 0;
+
+    for (int count : counts) {
+      sum += count < 0 ? 1 : count;
+    }
+
+    return sum;
+  }
+
+  private ThreadPoolExecutor hashingExecutor;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private BoundedPasswordEncoder passwordEncoder;
+
+  @Autowired
+  private RoleRegistry roleRegistry;
+
+  @Autowired
+  private Validator validator;
+
+  @Autowired
+  private EmailBloomFilter emailBloomFilter;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  @Value("${users.import.chunk-size:1000}")
+  private int chunkSize;
+
+  @Value("${users.import.hashing-threads:0}")
+  private int hashingThreads;
+}
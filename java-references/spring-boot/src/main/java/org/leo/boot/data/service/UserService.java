@@ -1,6 +1,7 @@
 package org.leo.boot.data.service;
 
 import org.leo.boot.data.model.User;
+import org.leo.boot.data.model.UserSummary;
 
 /**
  * User service for custom repository actions
@@ -10,5 +11,9 @@ public interface UserService {
 
   public User findUserByEmail(String email);
 
+  public boolean isEmailRegistered(String email);
+
+  public UserSummary findUserSummaryByEmail(String email);
+
   public void saveUser(User user);
 }
@@ -1,21 +1,24 @@
 package org.leo.boot.data.service;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 
 import org.leo.boot.data.model.Role;
 import org.leo.boot.data.model.User;
-import org.leo.boot.data.repository.RoleRepository;
+import org.leo.boot.data.model.UserSummary;
 import org.leo.boot.data.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * User service implementation
  * @author fahdessid
  */
-
+@Service
 public class UserServiceImpl implements UserService {
 
   @Override
@@ -23,24 +26,65 @@ public class UserServiceImpl implements UserService {
     return userRepository.findByEmail(email);
   }
 
+  @Override
+  public UserSummary findUserSummaryByEmail(String email) {
+    return userRepository.findSummaryByEmail(email);
+  }
+
+  /**
+   * The bloom filter answers most checks, the database is only queried when the email may be registered
+   */
+  @Override
+  public boolean isEmailRegistered(String email) {
+    if (email == null || !emailBloomFilter.mightContain(email)) {
+      return false;
+    }
+
+    boolean registered = userRepository.findByEmail(email) != null;
+
+    if (!registered) {
+      emailBloomFilter.recordFalsePositive();
+    }
+
+    return registered;
+  }
+
+  /**
+   * The password is hashed before the transaction starts, so no database connection is held during the BCrypt work,
+   * the role reference and the user then share the same transaction and persistence context
+   */
   @Override
   public void saveUser(User user) {
-    user.setPassword(bCryptPasswordEncoder.encode(user.getPassword()));
+    user.setPassword(passwordEncoder.encode(user.getPassword()));
 
     user.setActive(1);
     
-    Role userRole = roleRepository.findByRole("ADMIN");
-    user.setRoles(new HashSet<Role>(Arrays.asList(userRole)));
-    
-    userRepository.save(user);
+    transactionTemplate.execute(status -> {
+      Role userRole = roleRegistry.reference("ADMIN");
+      user.setRoles(new HashSet<Role>(Arrays.asList(userRole)));
+
+      return userRepository.save(user);
+    });
+
+    emailBloomFilter.put(user.getEmail());
+    eventPublisher.publishEvent(new RolesChangedEvent(this, Collections.singleton(user.getEmail())));
   }
 
   @Autowired
   private UserRepository userRepository;
   
   @Autowired
-  private RoleRepository roleRepository;
+  private RoleRegistry roleRegistry;
   
   @Autowired
-  private BCryptPasswordEncoder bCryptPasswordEncoder;
+  private PasswordEncoder passwordEncoder;
+
+  @Autowired
+  private ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  private TransactionTemplate transactionTemplate;
+
+  @Autowired
+  private EmailBloomFilter emailBloomFilter;
 }
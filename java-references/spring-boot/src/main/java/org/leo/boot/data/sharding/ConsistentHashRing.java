@@ -0,0 +1,97 @@
+package org.leo.boot.data.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring with virtual nodes
+ * Each node is placed virtualNodes times on the ring so keys are spread evenly and adding or removing a node
+ * only moves about 1/N of the keys instead of re-hashing everything
+ * The ring is copy-on-write : lookups read an immutable snapshot and never lock
+ * @author fahdessid
+ */
+public class ConsistentHashRing<N> {
+
+  public ConsistentHashRing(int virtualNodes) {
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("virtualNodes must be at least 1");
+    }
+    this.virtualNodes = virtualNodes;
+  }
+
+  public synchronized void addNode(String name, N node) {
+    TreeMap<Long, N> copy = new TreeMap<Long, N>(ring);
+
+    for (int i = 0; i < virtualNodes; i++) {
+      copy.put(hash(name + "#" + i), node);
+    }
+
+    List<N> copyNodes = new ArrayList<N>(nodes);
+    copyNodes.add(node);
+
+    nodes = Collections.unmodifiableList(copyNodes);
+    ring = copy;
+  }
+
+  public synchronized void removeNode(String name, N node) {
+    TreeMap<Long, N> copy = new TreeMap<Long, N>(ring);
+
+    for (int i = 0; i < virtualNodes; i++) {
+      copy.remove(hash(name + "#" + i));
+    }
+
+    List<N> copyNodes = new ArrayList<N>(nodes);
+    copyNodes.remove(node);
+
+    nodes = Collections.unmodifiableList(copyNodes);
+    ring = copy;
+  }
+
+  /**
+   * Returns the node owning the key : the first virtual node clockwise from the key hash
+   */
+  public N nodeFor(String key) {
+    NavigableMap<Long, N> snapshot = ring;
+
+    if (snapshot.isEmpty()) {
+      throw new IllegalStateException("No node registered in the ring");
+    }
+
+    Map.Entry<Long, N> entry = snapshot.ceilingEntry(hash(key));
+
+    return entry != null ? entry.getValue() : snapshot.firstEntry().getValue();
+  }
+
+  public List<N> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * 64 first bits of the MD5 digest, well distributed and stable across JVMs unlike String.hashCode
+   */
+  static long hash(String key) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+      long hash = 0;
+
+      for (int i = 0; i < 8; i++) {
+        hash = (hash << 8) | (digest[i] & 0xFF);
+      }
+
+      return hash;
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not available", e);
+    }
+  }
+
+  private final int virtualNodes;
+  private volatile TreeMap<Long, N> ring = new TreeMap<Long, N>();
+  private volatile List<N> nodes = Collections.emptyList();
+}
@@ -0,0 +1,89 @@
+package org.leo.boot.examples;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.leo.boot.data.jdbc.LatencyHistogram;
+
+/**
+ * Throughput of GET requests on a running application, with 1 to N client threads (default : the login page)
+ * Run it against SpringBootMvcExample started with and without the prod profile to compare rendering every time
+ * with the template cache and the rendered page cache
+ * Args : url, duration of each round in ms, warm up in ms
+ * @author fahdessid
+ */
+public class HttpThroughputBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    String url = args.length > 0 ? args[0] : "http://localhost:8001/login";
+    long durationMillis = args.length > 1 ? Long.parseLong(args[1]) : 5000;
+    long warmUpMillis = args.length > 2 ? Long.parseLong(args[2]) : 5000;
+    int cores = Runtime.getRuntime().availableProcessors();
+
+    // lets the JIT compile the server side and fills the caches
+    run(new URL(url), cores, warmUpMillis);
+
+    System.out.println("threads\trequests/s\tmean us\tp99 us\terrors");
+
+    for (int threads = 1; threads <= cores * 4; threads *= 2) {
+      Result result = run(new URL(url), threads, durationMillis);
+
+      System.out.println(threads + "\t" + (result.latencies.getCount() * 1000 / durationMillis) + "\t"
+          + result.latencies.getMean() + "\t" + result.latencies.getPercentile(99) + "\t" + result.errors.sum());
+    }
+  }
+
+  private static Result run(URL url, int threads, long durationMillis) throws InterruptedException {
+    Result result = new Result();
+    CountDownLatch done = new CountDownLatch(threads);
+    long end = System.currentTimeMillis() + durationMillis;
+
+    for (int i = 0; i < threads; i++) {
+      new Thread(() -> {
+        byte[] buffer = new byte[8192];
+
+        while (System.currentTimeMillis() < end) {
+          long start = System.nanoTime();
+
+          try {
+            if (get(url, buffer) == HttpURLConnection.HTTP_OK) {
+              result.latencies.record((System.nanoTime() - start) / 1000);
+            } else {
+              result.errors.increment();
+            }
+          } catch (IOException e) {
+            result.errors.increment();
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+
+    done.await();
+    return result;
+  }
+
+  /**
+   * The body is read fully so the keep alive connection is reused by the next request
+   */
+  private static int get(URL url, byte[] buffer) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    int status = connection.getResponseCode();
+
+    try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+      while (in != null && in.read(buffer) != -1) {
+        // drained
+      }
+    }
+    return status;
+  }
+
+  private static final class Result {
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+  }
+}
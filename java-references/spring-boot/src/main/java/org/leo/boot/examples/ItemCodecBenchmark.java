@@ -0,0 +1,109 @@
+package org.leo.boot.examples;
+
+import java.util.Collections;
+
+import org.leo.boot.data.model.Item;
+import org.leo.boot.data.mongo.ItemCodecMongoConverter;
+import org.springframework.data.mongodb.core.SimpleMongoDbFactory;
+import org.springframework.data.mongodb.core.convert.DefaultDbRefResolver;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoClient;
+
+/**
+ * Item decoding (read) and encoding (write) throughput of MappingMongoConverter (reflective mapping) and of
+ * ItemCodecMongoConverter (hand written ItemCodec, as configured by ItemCodecConfiguration)
+ * No MongoDB needed : the converters are measured alone, as MongoTemplate calls them for every document of findAll or save
+ * Each measure follows a warm up of the same length, the results are summed into a checksum so the JIT cannot drop them
+ * Usage : ItemCodecBenchmark [duration ms]
+ * @author fahdessid
+ */
+public class ItemCodecBenchmark {
+
+  public static void main(String[] args) {
+    long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 3000;
+    // never connected, the DBRef resolver only needs a factory
+    MongoClient client = new MongoClient();
+
+    try {
+      SimpleMongoDbFactory factory = new SimpleMongoDbFactory(client, "benchmark");
+      MappingMongoConverter reflective = initialize(new MappingMongoConverter(new DefaultDbRefResolver(factory), context()));
+      MappingMongoConverter codec = initialize(new ItemCodecMongoConverter(new DefaultDbRefResolver(factory), context()));
+
+      System.out.println("converter\toperation\tops/s\tchecksum");
+
+      for (int round = 0; round < 2; round++) {
+        boolean warmUp = round == 0;
+
+        run("reflective", reflective, durationMillis, warmUp);
+        run("codec", codec, durationMillis, warmUp);
+      }
+    } finally {
+      client.close();
+    }
+  }
+
+  private static MongoMappingContext context() {
+    MongoMappingContext context = new MongoMappingContext();
+
+    context.setInitialEntitySet(Collections.<Class<?>> singleton(Item.class));
+    context.afterPropertiesSet();
+
+    return context;
+  }
+
+  private static MappingMongoConverter initialize(MappingMongoConverter converter) {
+    converter.afterPropertiesSet();
+    return converter;
+  }
+
+  private static void run(String name, MappingMongoConverter converter, long durationMillis, boolean warmUp) {
+    Item[] items = new Item[ITEMS];
+    DBObject[] documents = new DBObject[ITEMS];
+
+    for (int i = 0; i < ITEMS; i++) {
+      items[i] = new Item("item-" + i, "code-" + i, i % 2 == 0 ? "book" : "game", i);
+      items[i].setId(String.format("%024x", i));
+      documents[i] = new BasicDBObject();
+      converter.write(items[i], documents[i]);
+    }
+
+    long checksum = 0;
+    long operations = 0;
+    long end = System.currentTimeMillis() + durationMillis;
+
+    while (System.currentTimeMillis() < end) {
+      for (int i = 0; i < ITEMS; i++) {
+        checksum += converter.read(Item.class, documents[i]).getQuantity();
+      }
+      operations += ITEMS;
+    }
+    report(name, "read", operations, durationMillis, checksum, warmUp);
+
+    checksum = 0;
+    operations = 0;
+    end = System.currentTimeMillis() + durationMillis;
+
+    while (System.currentTimeMillis() < end) {
+      for (int i = 0; i < ITEMS; i++) {
+        DBObject document = new BasicDBObject();
+
+        converter.write(items[i], document);
+        checksum += document.keySet().size();
+      }
+      operations += ITEMS;
+    }
+    report(name, "write", operations, durationMillis, checksum, warmUp);
+  }
+
+  private static void report(String name, String operation, long operations, long durationMillis, long checksum, boolean warmUp) {
+    if (!warmUp) {
+      System.out.println(name + "\t" + operation + "\t" + operations * 1000 / durationMillis + "\t" + checksum);
+    }
+  }
+
+  private static final int ITEMS = 1000;
+}
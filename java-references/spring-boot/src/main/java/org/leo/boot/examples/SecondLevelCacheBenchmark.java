@@ -0,0 +1,59 @@
+package org.leo.boot.examples;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.leo.boot.data.service.UserService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Benchmarking findUserByEmail with and without the hibernate second level and query caches
+ * Starts the MVC application context (no web server) against the configured MySQL database twice, and reports
+ * the number of JDBC statements and the mean latency of the lookups
+ * Usage : SecondLevelCacheBenchmark email [iterations]
+ * @author fahdessid
+ */
+public class SecondLevelCacheBenchmark {
+
+  public static void main(String[] args) {
+    String email = args[0];
+    int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+    System.out.println("cache\tstatements\tmean latency (us)");
+
+    for (boolean cached : new boolean[] {false, true}) {
+      ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringBootMvcExample.class)
+          .web(false)
+          .properties("spring.jpa.properties.hibernate.cache.use_second_level_cache=" + cached,
+              "spring.jpa.properties.hibernate.cache.use_query_cache=" + cached,
+              "spring.jpa.properties.hibernate.generate_statistics=true",
+              "spring.jpa.show-sql=false")
+          .run(args);
+
+      try {
+        UserService userService = context.getBean(UserService.class);
+        Statistics statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+
+        // warm up, then measure from clean statistics
+        for (int i = 0; i < iterations / 10; i++) {
+          userService.findUserByEmail(email);
+        }
+        statistics.clear();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++) {
+          userService.findUserByEmail(email);
+        }
+
+        long meanMicros = (System.nanoTime() - start) / iterations / 1000;
+
+        System.out.println(cached + "\t" + statistics.getPrepareStatementCount() + "\t" + meanMicros);
+      } finally {
+        context.close();
+      }
+    }
+  }
+}
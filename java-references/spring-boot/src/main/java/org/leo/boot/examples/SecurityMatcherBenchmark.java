@@ -0,0 +1,192 @@
+package org.leo.boot.examples;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import org.leo.boot.security.PathTrieRequestMatchers;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+
+/**
+ * First matching rule of a security rule set, found by the linear evaluation of one AntPathRequestMatcher per pattern
+ * (what antMatchers() configures) and by PathTrieRequestMatchers (as configured by SecurityConfiguration)
+ * The rule set mixes literal paths, "*" and "**" segments, extensions and {variables}, over resources sharing their
+ * prefixes, the requested paths hit rules all along the list and miss a tenth of the time
+ * Both give the same rule for every path (checked first), the trie result is recomputed for every request
+ * Usage : SecurityMatcherBenchmark [rules] [duration ms]
+ * @author fahdessid
+ */
+public class SecurityMatcherBenchmark {
+
+  public static void main(String[] args) {
+    int rules = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    long durationMillis = args.length > 1 ? Long.parseLong(args[1]) : 3000;
+    // no Spring Boot logging configuration here, AntPathRequestMatcher would log every match at the logback default debug
+    ((Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+    List<String[]> ruleSet = ruleSet(rules);
+    List<AntPathRequestMatcher> linear = new ArrayList<AntPathRequestMatcher>();
+    List<Integer> linearRules = new ArrayList<Integer>();
+    PathTrieRequestMatchers trie = new PathTrieRequestMatchers();
+
+    for (int rule = 0; rule < ruleSet.size(); rule++) {
+      for (String pattern : ruleSet.get(rule)) {
+        linear.add(new AntPathRequestMatcher(pattern));
+        linearRules.add(rule);
+      }
+      trie.matcher(ruleSet.get(rule));
+    }
+
+    PathRequest[] requests = requests(rules);
+
+    for (PathRequest request : requests) {
+      int expected = linearRule(linear, linearRules, request);
+
+      if (trie.firstRule(request) != expected) {
+        throw new IllegalStateException(request.getServletPath() + " : rule " + trie.firstRule(request) + " instead of " + expected);
+      }
+    }
+
+    System.out.println(ruleSet.size() + " rules, " + linear.size() + " patterns, " + requests.length + " paths");
+    System.out.println("matcher\tops/s\tchecksum");
+
+    for (int round = 0; round < 2; round++) {
+      boolean warmUp = round == 0;
+      long checksum = 0;
+      long operations = 0;
+      long end = System.currentTimeMillis() + durationMillis;
+
+      while (System.currentTimeMillis() < end) {
+        for (PathRequest request : requests) {
+          checksum += linearRule(linear, linearRules, request);
+        }
+        operations += requests.length;
+      }
+      report("antMatchers", operations, durationMillis, checksum, warmUp);
+
+      checksum = 0;
+      operations = 0;
+      end = System.currentTimeMillis() + durationMillis;
+
+      while (System.currentTimeMillis() < end) {
+        for (PathRequest request : requests) {
+          checksum += trie.firstRule(request);
+        }
+        operations += requests.length;
+      }
+      report("trie", operations, durationMillis, checksum, warmUp);
+    }
+  }
+
+  private static int linearRule(List<AntPathRequestMatcher> linear, List<Integer> linearRules, HttpServletRequest request) {
+    for (int i = 0; i < linear.size(); i++) {
+      if (linear.get(i).matches(request)) {
+        return linearRules.get(i);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Per resource : its public pages, its api (read and admin), its assets, the exact rules first
+   */
+  private static List<String[]> ruleSet(int rules) {
+    List<String[]> ruleSet = new ArrayList<String[]>();
+
+    ruleSet.add(new String[] {"/", "/login", "/registration"});
+
+    for (int resource = 0; ruleSet.size() < rules; resource++) {
+      String name = RESOURCES[resource % RESOURCES.length] + (resource / RESOURCES.length);
+
+      ruleSet.add(new String[] {"/" + name, "/" + name + "/list"});
+      ruleSet.add(new String[] {"/api/v1/" + name + "/{id}", "/api/v2/" + name + "/{id}"});
+      ruleSet.add(new String[] {"/api/*/" + name + "/*/admin/**"});
+      ruleSet.add(new String[] {"/assets/" + name + "/**/*.css", "/assets/" + name + "/**/*.js"});
+      ruleSet.add(new String[] {"/admin/" + name + "/**"});
+    }
+
+    ruleSet.add(new String[] {"/actuator/**"});
+    return ruleSet;
+  }
+
+  private static PathRequest[] requests(int rules) {
+    Random random = new Random(42);
+    PathRequest[] requests = new PathRequest[1000];
+    int resources = Math.max(1, rules / 5);
+
+    for (int i = 0; i < requests.length; i++) {
+      String name = RESOURCES[random.nextInt(resources) % RESOURCES.length] + random.nextInt(resources / RESOURCES.length + 1);
+      String path;
+
+      switch (random.nextInt(10)) {
+      case 0: path = "/" + name; break;
+      case 1: path = "/" + name + "/list"; break;
+      case 2: path = "/api/v1/" + name + "/" + random.nextInt(100000); break;
+      case 3: path = "/api/v2/" + name + "/" + random.nextInt(100000) + "/admin/stock"; break;
+      case 4: path = "/assets/" + name + "/theme/main.css"; break;
+      case 5: path = "/assets/" + name + "/app.js"; break;
+      case 6: path = "/admin/" + name + "/users/" + random.nextInt(100); break;
+      case 7: path = "/actuator/health"; break;
+      case 8: path = random.nextBoolean() ? "/login" : "/"; break;
+      default: path = "/unknown/" + name + "/" + random.nextInt(100);
+      }
+      requests[i] = new PathRequest(path);
+    }
+    return requests;
+  }
+
+  private static void report(String name, long operations, long durationMillis, long checksum, boolean warmUp) {
+    if (!warmUp) {
+      System.out.println(name + "\t" + operations * 1000 / durationMillis + "\t" + checksum);
+    }
+  }
+
+  /**
+   * Only what the matchers read, no attribute kept : the trie is walked for every call
+   */
+  private static final class PathRequest extends HttpServletRequestWrapper {
+
+    PathRequest(String servletPath) {
+      super((HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+          new Class<?>[] {HttpServletRequest.class}, (proxy, method, arguments) -> {
+            throw new UnsupportedOperationException(method.getName());
+          }));
+      this.servletPath = servletPath;
+    }
+
+    @Override
+    public String getServletPath() {
+      return servletPath;
+    }
+
+    @Override
+    public String getPathInfo() {
+      return null;
+    }
+
+    @Override
+    public String getMethod() {
+      return "GET";
+    }
+
+    @Override
+    public Object getAttribute(String name) {
+      return null;
+    }
+
+    @Override
+    public void setAttribute(String name, Object o) {
+    }
+
+    private final String servletPath;
+  }
+
+  private static final String[] RESOURCES = {"item", "order", "customer", "invoice", "report", "user", "stock", "supplier"};
+}
@@ -0,0 +1,32 @@
+package org.leo.boot.examples;
+
+import org.leo.boot.startup.FastStartInitializer;
+import org.leo.boot.startup.StartupProfiler;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
+
+/**
+ * The item rest api (MongoDB) and the login / admin MVC application (MySQL, Thymleaf, Security) in one JVM
+ * The "combined" profile isolates the route groups with bulkheads (BulkheadConfiguration) and leaves the rest api public
+ * @author fahdessid
+ */
+//the examples package is not scanned, it holds the other applications
+@SpringBootApplication(scanBasePackages = {"org.leo.boot.configuration", "org.leo.boot.data", "org.leo.boot.mvc", "org.leo.boot.rest.api"})
+//the repositories of both stores live in one package, each store only takes the interfaces extending its own repository type
+@EnableJpaRepositories(basePackages = {"org.leo.boot.data.repository"})
+@EnableMongoRepositories(basePackages = {"org.leo.boot.data.repository"})
+@EntityScan("org.leo.boot.data.model")
+public class SpringBootCombinedExample {
+
+  public static void main(String[] args) {
+    SpringApplication application = new SpringApplication(SpringBootCombinedExample.class);
+
+    application.setAdditionalProfiles("combined");
+    application.addListeners(new StartupProfiler());
+    application.addInitializers(new FastStartInitializer());
+    application.run(args);
+  }
+}
@@ -1,5 +1,7 @@
 package org.leo.boot.examples;
 
+import org.leo.boot.startup.FastStartInitializer;
+import org.leo.boot.startup.StartupProfiler;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -19,6 +21,11 @@ import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 public class SpringBootMvcExample {
 
   public static void main(String[] args) {
-      SpringApplication.run(SpringBootMvcExample.class, args);
+    SpringApplication application = new SpringApplication(SpringBootMvcExample.class);
+
+    application.addListeners(new StartupProfiler());
+    // in fast start mode the rest api (and the rest example configuration pulling in mongodb) is left out
+    application.addInitializers(new FastStartInitializer("org.leo.boot.rest", "org.leo.boot.examples"));
+    application.run(args);
   }
 }
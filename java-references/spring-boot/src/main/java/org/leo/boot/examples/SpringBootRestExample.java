@@ -1,12 +1,25 @@
 package org.leo.boot.examples;
 
+import org.leo.boot.configuration.ItemCircuitBreakerConfiguration;
+import org.leo.boot.configuration.ItemCodecConfiguration;
+import org.leo.boot.configuration.ItemHistoryConfiguration;
+import org.leo.boot.configuration.ItemShardingConfiguration;
+import org.leo.boot.configuration.MongoInstrumentationConfiguration;
+import org.leo.boot.configuration.StockReservationConfiguration;
+import org.leo.boot.configuration.TrafficRecordingConfiguration;
+import org.leo.boot.configuration.VirtualThreadsConfiguration;
+import org.leo.boot.configuration.WarmUpConfiguration;
+import org.leo.boot.startup.FastStartInitializer;
+import org.leo.boot.startup.StartupProfiler;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.autoconfigure.ManagementWebSecurityAutoConfiguration;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceTransactionManagerAutoConfiguration;
 import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
 import org.springframework.boot.autoconfigure.security.SecurityAutoConfiguration;
+import org.springframework.context.annotation.Import;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -20,12 +33,23 @@ import org.springframework.web.bind.annotation.RestController;
 //needed if the Mongodb repositories are not in the same package/sub package of the application class
 @EnableMongoRepositories(basePackages = {"org.leo.boot.data.repository"})
 //we only want to test rest api against mongodb here, so we disable Datasource and Security integration
-@EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class, HibernateJpaAutoConfiguration.class, SecurityAutoConfiguration.class})
+@EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, DataSourceTransactionManagerAutoConfiguration.class, HibernateJpaAutoConfiguration.class, SecurityAutoConfiguration.class, ManagementWebSecurityAutoConfiguration.class})
+//optional features living outside of the scanned package, each one is enabled by its own property
+@Import({ItemCircuitBreakerConfiguration.class, ItemCodecConfiguration.class, ItemHistoryConfiguration.class, ItemShardingConfiguration.class, MongoInstrumentationConfiguration.class,
+    StockReservationConfiguration.class, TrafficRecordingConfiguration.class, VirtualThreadsConfiguration.class,
+    WarmUpConfiguration.class})
 @RestController
 public class SpringBootRestExample {
 
   public static void main(String[] args) {
-    SpringApplication.run(SpringBootRestExample.class, args);
+    SpringApplication application = new SpringApplication(SpringBootRestExample.class);
+
+    // the actuator endpoints without login, see application-rest.properties
+    application.setAdditionalProfiles("rest");
+    application.addListeners(new StartupProfiler());
+    // the scan is already limited to the rest api
+    application.addInitializers(new FastStartInitializer());
+    application.run(args);
   }
   
   @RequestMapping("/input")
@@ -0,0 +1,63 @@
+package org.leo.boot.examples;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Startup time of an application command, started several times in a row
+ * The time is read from the "Ready in Nms after JVM start" line logged by StartupProfiler, the process is then killed
+ * Args : runs, then the command, for instance to compare
+ *   10 java -cp target/spring-boot-0.0.1-SNAPSHOT.jar:$(cat target/appcds.classpath) org.leo.boot.examples.SpringBootMvcExample
+ *   10 java -cp ... org.leo.boot.examples.SpringBootMvcExample --spring.profiles.active=fast-start
+ *   10 java -XX:SharedArchiveFile=target/app-cds.jsa -cp ... org.leo.boot.examples.SpringBootMvcExample --spring.profiles.active=fast-start
+ * The runs measured keep startup.profiler.enabled=false, the slowest beans are looked for in a separate run
+ * @author fahdessid
+ */
+public class StartupTimeBenchmark {
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int runs = Integer.parseInt(args[0]);
+    List<String> command = Arrays.asList(args).subList(1, args.length);
+    List<Long> times = new ArrayList<Long>();
+
+    for (int i = 0; i < runs; i++) {
+      long millis = run(command);
+
+      System.out.println("run " + (i + 1) + "\t" + millis + "ms");
+      times.add(millis);
+    }
+
+    Collections.sort(times);
+    System.out.println("min " + times.get(0) + "ms\tmedian " + times.get(runs / 2) + "ms\tmax " + times.get(runs - 1) + "ms");
+  }
+
+  private static long run(List<String> command) throws IOException, InterruptedException {
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+    try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+      String line;
+
+      while ((line = output.readLine()) != null) {
+        Matcher ready = READY.matcher(line);
+
+        if (ready.find()) {
+          return Long.parseLong(ready.group(1));
+        }
+      }
+    } finally {
+      process.destroy();
+      process.waitFor();
+    }
+
+    throw new IllegalStateException("The application exited before being ready : " + command);
+  }
+
+  private static final Pattern READY = Pattern.compile("Ready in (\\d+)ms after JVM start");
+}
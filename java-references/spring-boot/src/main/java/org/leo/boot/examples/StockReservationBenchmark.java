@@ -0,0 +1,76 @@
+package org.leo.boot.examples;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.leo.boot.data.reservation.StockReservations;
+
+/**
+ * Benchmarking the in memory stock reservations on a single hot item, with 1 to N threads
+ * The store is an in memory map so only the engine is measured
+ * Each round also checks the overselling guarantee : the sold quantity never exceeds the initial stock
+ * @author fahdessid
+ */
+public class StockReservationBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int cores = Runtime.getRuntime().availableProcessors();
+    long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 2000;
+
+    System.out.println("threads\treservations/s\tsold\tstock");
+
+    for (int threads = 1; threads <= cores * 2; threads *= 2) {
+      run(threads, durationMillis);
+    }
+  }
+
+  private static void run(int threads, long durationMillis) throws InterruptedException {
+    Map<String, Integer> store = new ConcurrentHashMap<String, Integer>();
+    store.put(HOT_ITEM, INITIAL_STOCK);
+
+    StockReservations reservations = new StockReservations(store::get,
+        (flushId, deltas) -> deltas.forEach((itemId, delta) -> store.merge(itemId, delta, Integer::sum)), 8, 60000);
+
+    LongAdder operations = new LongAdder();
+    AtomicInteger sold = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(threads);
+    long end = System.currentTimeMillis() + durationMillis;
+
+    for (int i = 0; i < threads; i++) {
+      new Thread(() -> {
+        int n = 0;
+
+        while (System.currentTimeMillis() < end) {
+          String reservationId = reservations.reserve(HOT_ITEM, 1);
+
+          if (reservationId != null) {
+            // one checkout out of ten is paid, the others are abandoned
+            if (++n % 10 == 0) {
+              reservations.confirm(reservationId);
+              sold.incrementAndGet();
+            } else {
+              reservations.release(reservationId);
+            }
+          }
+          operations.increment();
+        }
+        done.countDown();
+      }).start();
+    }
+
+    done.await();
+    reservations.flush();
+
+    if (sold.get() > INITIAL_STOCK || store.get(HOT_ITEM) != INITIAL_STOCK - sold.get()) {
+      throw new IllegalStateException("Stock is inconsistent : sold " + sold.get() + ", stored " + store.get(HOT_ITEM));
+    }
+
+    System.out.println(threads + "\t" + (operations.sum() * 1000 / durationMillis) + "\t" + sold.get() + "\t" + store.get(HOT_ITEM));
+  }
+
+  private static final String HOT_ITEM = "hot-item";
+  private static final int INITIAL_STOCK = 1000000;
+}
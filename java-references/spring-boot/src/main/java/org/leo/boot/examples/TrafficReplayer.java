@@ -0,0 +1,153 @@
+package org.leo.boot.examples;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import org.leo.boot.data.jdbc.LatencyHistogram;
+import org.leo.boot.rest.traffic.TrafficLog;
+import org.leo.boot.rest.traffic.TrafficRecord;
+
+/**
+ * Replays a traffic log recorded by TrafficRecordingConfiguration against a running instance, at the recorded pace
+ * or speed times faster, and reports per route (ids replaced by {id}) the recorded and replayed latency distributions
+ * Each request is sent at its recorded offset whatever the previous ones became (open model) : "response" latencies
+ * are measured from that scheduled time, so a saturated server or replayer shows up as queueing, "service" latencies
+ * from the actual send
+ * The writes are replayed too : run it against a copy of the recorded database
+ * Args : log file, base url, speed, max concurrent requests
+ * @author fahdessid
+ */
+public class TrafficReplayer {
+
+  public static void main(String[] args) throws Exception {
+    String file = args[0];
+    String baseUrl = args.length > 1 ? args[1] : "http://localhost:8080";
+    double speed = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+    int concurrency = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+    List<TrafficRecord> records;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      records = TrafficLog.read(in);
+    }
+
+    if (records.isEmpty()) {
+      System.out.println("No request in " + file);
+      return;
+    }
+
+    // kept alive connections per host, 5 by default
+    System.setProperty("http.maxConnections", Integer.toString(concurrency));
+
+    Map<String, RouteStatistics> routes = new ConcurrentHashMap<String, RouteStatistics>();
+    ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+    long startNanos = System.nanoTime();
+    // the start times count from the start of the recording, the replay starts with the first recorded request
+    long firstMicros = records.get(0).getStartMicros();
+
+    for (TrafficRecord record : records) {
+      long scheduledNanos = startNanos + (long) ((record.getStartMicros() - firstMicros) * 1000 / speed);
+      RouteStatistics statistics = routes.computeIfAbsent(route(record), key -> new RouteStatistics());
+
+      for (long wait = scheduledNanos - System.nanoTime(); wait > 0; wait = scheduledNanos - System.nanoTime()) {
+        LockSupport.parkNanos(wait);
+      }
+      executor.execute(() -> replay(baseUrl, record, scheduledNanos, statistics));
+    }
+
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.HOURS);
+
+    long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    long recordedMillis = (records.get(records.size() - 1).getStartMicros() - firstMicros) / 1000;
+
+    System.out.println(records.size() + " requests recorded over " + recordedMillis + "ms, replayed in " + elapsedMillis
+        + "ms (speed " + speed + ")");
+    System.out.println("route\tcount\trecorded p50 us\trecorded p99 us\tservice p50 us\tservice p99 us\tservice max us"
+        + "\tresponse p99 us\terrors\tstatus changes");
+
+    for (Map.Entry<String, RouteStatistics> entry : new TreeMap<String, RouteStatistics>(routes).entrySet()) {
+      RouteStatistics statistics = entry.getValue();
+
+      System.out.println(entry.getKey() + "\t" + statistics.recorded.getCount()
+          + "\t" + statistics.recorded.getPercentile(50) + "\t" + statistics.recorded.getPercentile(99)
+          + "\t" + statistics.service.getPercentile(50) + "\t" + statistics.service.getPercentile(99)
+          + "\t" + statistics.service.getMax() + "\t" + statistics.response.getPercentile(99)
+          + "\t" + statistics.errors.sum() + "\t" + statistics.statusChanges.sum());
+    }
+  }
+
+  private static void replay(String baseUrl, TrafficRecord record, long scheduledNanos, RouteStatistics statistics) {
+    long sentNanos = System.nanoTime();
+
+    statistics.recorded.record(record.getDurationMicros());
+
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + record.getUri()).openConnection();
+
+      connection.setRequestMethod(record.getMethod());
+      if (record.getBody().length > 0) {
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", record.getContentType());
+
+        try (OutputStream out = connection.getOutputStream()) {
+          out.write(record.getBody());
+        }
+      }
+
+      int status = connection.getResponseCode();
+
+      // read fully so the kept alive connection is reused
+      try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+        byte[] buffer = new byte[8192];
+
+        while (in != null && in.read(buffer) != -1) {
+          // drained
+        }
+      }
+
+      long end = System.nanoTime();
+
+      statistics.service.record((end - sentNanos) / 1000);
+      statistics.response.record((end - scheduledNanos) / 1000);
+      if (status != record.getStatus()) {
+        statistics.statusChanges.increment();
+      }
+    } catch (IOException e) {
+      statistics.errors.increment();
+    }
+  }
+
+  private static String route(TrafficRecord record) {
+    int query = record.getUri().indexOf('?');
+    String path = query < 0 ? record.getUri() : record.getUri().substring(0, query);
+
+    return record.getMethod() + " " + ID_SEGMENT.matcher(path).replaceAll("/{id}");
+  }
+
+  /** MongoDB object ids and numbers */
+  private static final Pattern ID_SEGMENT = Pattern.compile("/(?:[0-9a-fA-F]{24}|\\d+)(?=/|$)");
+
+  private static final class RouteStatistics {
+    private final LatencyHistogram recorded = new LatencyHistogram();
+    private final LatencyHistogram service = new LatencyHistogram();
+    private final LatencyHistogram response = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder statusChanges = new LongAdder();
+  }
+}
@@ -0,0 +1,90 @@
+package org.leo.boot.examples;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.leo.boot.concurrent.VirtualThreads;
+
+/**
+ * Request handling on the classic Tomcat pool (200 platform threads) versus one virtual thread per request,
+ * for a growing number of concurrent requests each blocked 20ms on I/O (the time of a MongoDB or MySQL query)
+ * Reports the throughput, the platform threads and the heap used while running
+ * The "pinned" rows block inside a synchronized block, as the JDBC and Mongo drivers do : up to JDK 23 the virtual thread
+ * keeps its carrier thread, and the throughput falls to cores / 20ms
+ * Needs a JDK 21+ for the virtual rows. End to end, run HttpThroughputBenchmark against an application started with and
+ * without virtual-threads.enabled
+ * @author fahdessid
+ */
+public class VirtualThreadBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    long durationMillis = args.length > 0 ? Long.parseLong(args[0]) : 3000;
+
+    System.out.println("executor\tconcurrency\trequests/s\tplatform threads\theap MB");
+
+    for (int concurrency : new int[] {100, 1000, 10000}) {
+      run("pool-200", Executors.newFixedThreadPool(200), concurrency, durationMillis, false);
+
+      if (VirtualThreads.isSupported()) {
+        run("virtual", VirtualThreads.newVirtualThreadPerTaskExecutor(), concurrency, durationMillis, false);
+        run("virtual pinned", VirtualThreads.newVirtualThreadPerTaskExecutor(), concurrency, durationMillis, true);
+      }
+    }
+  }
+
+  private static void run(String name, ExecutorService executor, int concurrency, long durationMillis, boolean pinned)
+      throws InterruptedException {
+    Semaphore inFlight = new Semaphore(concurrency);
+    LongAdder completed = new LongAdder();
+    long end = System.currentTimeMillis() + durationMillis;
+    long sampleAt = System.currentTimeMillis() + durationMillis / 2;
+    int platformThreads = 0;
+    long heapBytes = 0;
+
+    while (System.currentTimeMillis() < end) {
+      // allocated out of the task, a lock on an object not escaping the task would be removed by the JIT
+      Object lock = new Object();
+
+      inFlight.acquire();
+      executor.execute(() -> {
+        try {
+          if (pinned) {
+            synchronized (lock) {
+              blockOnIo();
+            }
+          } else {
+            blockOnIo();
+          }
+          completed.increment();
+        } finally {
+          inFlight.release();
+        }
+      });
+
+      if (heapBytes == 0 && System.currentTimeMillis() >= sampleAt) {
+        platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        heapBytes = Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+      }
+    }
+
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+
+    System.out.println(name + "\t" + concurrency + "\t" + (completed.sum() * 1000 / durationMillis) + "\t"
+        + platformThreads + "\t" + heapBytes / (1024 * 1024));
+  }
+
+  private static void blockOnIo() {
+    try {
+      Thread.sleep(IO_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static final long IO_MILLIS = 20;
+}
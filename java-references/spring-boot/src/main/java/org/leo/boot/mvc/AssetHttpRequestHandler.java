@@ -0,0 +1,31 @@
+package org.leo.boot.mvc;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+import org.springframework.web.servlet.resource.VersionedResource;
+
+/**
+ * Static resources handler setting the caching headers according to the url :
+ * a fingerprinted url (/css/login-{content hash}.css) never changes content, the browser keeps it a year without revalidating,
+ * a plain url must be revalidated (ETag / Last-Modified) so a new deployment is seen at once
+ * @author fahdessid
+ */
+public class AssetHttpRequestHandler extends ResourceHttpRequestHandler {
+
+  @Override
+  protected void setHeaders(HttpServletResponse response, Resource resource, MediaType mediaType) throws IOException {
+    super.setHeaders(response, resource, mediaType);
+
+    response.setHeader("Cache-Control", resource instanceof VersionedResource ? IMMUTABLE : REVALIDATE);
+    // set on the uncompressed responses too, a shared cache must not hand them to every client
+    response.setHeader("Vary", "Accept-Encoding");
+  }
+
+  private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+  private static final String REVALIDATE = "no-cache";
+}
@@ -0,0 +1,196 @@
+package org.leo.boot.mvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.EncodedResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+import org.springframework.web.servlet.resource.VersionedResource;
+
+/**
+ * Serves the brotli (.br) or gzip (.gz) file precomputed by StaticAssetCompressor next to an asset,
+ * according to the Accept-Encoding of the request : nothing is compressed at request time
+ *
+ * It must be the first resolver of the chain : the resources below (version, cache) are resolved on the original file,
+ * so the fingerprint is the same whatever the encoding, and the encoding is never part of a cached resolution
+ * Whether a variant exists is looked up once per asset and encoding
+ * @author fahdessid
+ */
+public class PrecompressedResourceResolver extends AbstractResourceResolver {
+
+  @Override
+  protected Resource resolveResourceInternal(HttpServletRequest request, String requestPath,
+      List<? extends Resource> locations, ResourceResolverChain chain) {
+    Resource resource = chain.resolveResource(request, requestPath, locations);
+
+    // byte ranges are computed on the original content
+    if (resource == null || request == null || request.getHeader("Range") != null) {
+      return resource;
+    }
+
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+
+    for (int i = 0; i < ENCODINGS.length; i++) {
+      if (accepts(acceptEncoding, ENCODINGS[i])) {
+        Resource variant = variant(resource, EXTENSIONS[i]);
+
+        if (variant != null) {
+          return resource instanceof VersionedResource
+              ? new VersionedPrecompressedResource(resource, variant, ENCODINGS[i], ((VersionedResource) resource).getVersion())
+              : new PrecompressedResource(resource, variant, ENCODINGS[i]);
+        }
+      }
+    }
+
+    return resource;
+  }
+
+  @Override
+  protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+      ResourceResolverChain chain) {
+    return chain.resolveUrlPath(resourceUrlPath, locations);
+  }
+
+  private Resource variant(Resource resource, String extension) {
+    try {
+      String key = resource.getURL().toExternalForm() + extension;
+      Boolean exists = variantExists.get(key);
+      Resource variant = resource.createRelative(resource.getFilename() + extension);
+
+      if (exists == null) {
+        exists = variant.isReadable();
+        variantExists.put(key, exists);
+      }
+
+      return exists ? variant : null;
+    } catch (IOException e) {
+      logger.debug("No precompressed variant for " + resource, e);
+      return null;
+    }
+  }
+
+  /**
+   * True if the encoding is listed in the header without q=0
+   */
+  private static boolean accepts(String acceptEncoding, String encoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+
+    for (String token : acceptEncoding.split(",")) {
+      String[] parts = token.trim().split(";");
+
+      if (parts[0].trim().equalsIgnoreCase(encoding)) {
+        return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  private static final String[] ENCODINGS = {"br", "gzip"};
+  private static final String[] EXTENSIONS = {".br", ".gz"};
+
+  private final Map<String, Boolean> variantExists = new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * Content of the variant, name and dates of the original (the media type is computed from the name)
+   */
+  private static class PrecompressedResource extends AbstractResource implements EncodedResource {
+
+    PrecompressedResource(Resource original, Resource encoded, String encoding) {
+      this.original = original;
+      this.encoded = encoded;
+      this.encoding = encoding;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+      return encoded.getInputStream();
+    }
+
+    @Override
+    public boolean exists() {
+      return encoded.exists();
+    }
+
+    @Override
+    public boolean isReadable() {
+      return encoded.isReadable();
+    }
+
+    @Override
+    public URL getURL() throws IOException {
+      return encoded.getURL();
+    }
+
+    @Override
+    public URI getURI() throws IOException {
+      return encoded.getURI();
+    }
+
+    @Override
+    public File getFile() throws IOException {
+      return encoded.getFile();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+      return encoded.contentLength();
+    }
+
+    @Override
+    public long lastModified() throws IOException {
+      return original.lastModified();
+    }
+
+    @Override
+    public Resource createRelative(String relativePath) throws IOException {
+      return original.createRelative(relativePath);
+    }
+
+    @Override
+    public String getFilename() {
+      return original.getFilename();
+    }
+
+    @Override
+    public String getDescription() {
+      return encoded.getDescription();
+    }
+
+    @Override
+    public String getContentEncoding() {
+      return encoding;
+    }
+
+    private final Resource original;
+    private final Resource encoded;
+    private final String encoding;
+  }
+
+  private static class VersionedPrecompressedResource extends PrecompressedResource implements VersionedResource {
+
+    VersionedPrecompressedResource(Resource original, Resource encoded, String encoding, String version) {
+      super(original, encoded, encoding);
+      this.version = version;
+    }
+
+    @Override
+    public String getVersion() {
+      return version;
+    }
+
+    private final String version;
+  }
+}
@@ -0,0 +1,109 @@
+package org.leo.boot.mvc;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.util.DigestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Serves almost static pages (login, registration) from a byte cache
+ * The first GET of a page is rendered by Thymeleaf as usual, then its bytes are replayed with an ETag,
+ * so later requests skip the controller and the template engine, and browsers revalidating get a 304 without a body
+ * A page is cached per path and per value of the parameters its template reads (login?error) : the other parameters
+ * do not change the page, they are left out of the key so random query strings cannot flush the cache
+ * Only plain 200 text/html responses setting no cookie are cached : nothing user specific can end up shared
+ * Only the body and the content type are replayed, the filters before this one write the other headers
+ * @author fahdessid
+ */
+public class RenderedPageCacheFilter extends OncePerRequestFilter {
+
+  /**
+   * @param parameters the request parameters the cached pages depend on
+   */
+  public RenderedPageCacheFilter(long maximumPages, long ttlSeconds, String... parameters) {
+    this.parameters = parameters;
+    this.pages = Caffeine.newBuilder()
+        .maximumSize(maximumPages)
+        .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+        .build();
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    if (!"GET".equals(request.getMethod())) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    String key = key(request);
+    RenderedPage page = pages.getIfPresent(key);
+
+    if (page == null) {
+      ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+
+      filterChain.doFilter(request, wrapper);
+
+      if (wrapper.getStatus() == HttpServletResponse.SC_OK && wrapper.getContentType() != null
+          && wrapper.getContentType().startsWith("text/html") && wrapper.getHeader("Set-Cookie") == null) {
+        byte[] body = wrapper.getContentAsByteArray();
+        pages.put(key, new RenderedPage(body, wrapper.getContentType(), "\"" + DigestUtils.md5DigestAsHex(body) + "\""));
+      }
+
+      wrapper.copyBodyToResponse();
+      return;
+    }
+
+    response.setHeader("ETag", page.etag);
+
+    if (page.etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    response.setContentType(page.contentType);
+    response.setContentLength(page.body.length);
+    response.getOutputStream().write(page.body);
+  }
+
+  private String key(HttpServletRequest request) {
+    StringBuilder key = new StringBuilder(request.getRequestURI());
+
+    for (String parameter : parameters) {
+      String[] values = request.getParameterValues(parameter);
+
+      if (values != null) {
+        key.append(key.indexOf("?") < 0 ? '?' : '&').append(parameter).append('=').append(Arrays.toString(values));
+      }
+    }
+
+    return key.toString();
+  }
+
+  private static final class RenderedPage {
+
+    RenderedPage(byte[] body, String contentType, String etag) {
+      this.body = body;
+      this.contentType = contentType;
+      this.etag = etag;
+    }
+
+    private final byte[] body;
+    private final String contentType;
+    private final String etag;
+  }
+
+  private final String[] parameters;
+  private final Cache<String, RenderedPage> pages;
+}
@@ -0,0 +1,110 @@
+package org.leo.boot.mvc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build step (exec-maven-plugin, prepare-package phase) writing a .gz and a .br file next to every text asset of the
+ * given folder (target/classes/static), read later by PrecompressedResourceResolver
+ * Compression is done once at the highest level, which would be far too slow per request
+ * Brotli needs the brotli command line tool, without it only gzip variants are written
+ * A variant saving less than 10% is not kept
+ * @author fahdessid
+ */
+public class StaticAssetCompressor {
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    Path root = Paths.get(args.length > 0 ? args[0] : "target/classes/static");
+
+    if (!Files.isDirectory(root)) {
+      System.out.println("No static assets in " + root);
+      return;
+    }
+
+    boolean brotli = brotliAvailable();
+    List<Path> assets;
+
+    try (Stream<Path> files = Files.walk(root)) {
+      assets = files.filter(Files::isRegularFile).filter(StaticAssetCompressor::isCompressible).collect(Collectors.toList());
+    }
+
+    for (Path asset : assets) {
+      long size = Files.size(asset);
+
+      gzip(asset, size);
+
+      if (brotli) {
+        brotli(asset, size);
+      }
+    }
+
+    System.out.println("Precompressed " + assets.size() + " assets in " + root + (brotli ? "" : " (gzip only, no brotli command)"));
+  }
+
+  private static void gzip(Path asset, long size) throws IOException {
+    Path target = Paths.get(asset + ".gz");
+
+    try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(target)) {
+      {
+        def.setLevel(Deflater.BEST_COMPRESSION);
+      }
+    }) {
+      Files.copy(asset, out);
+    }
+
+    keepIfSmaller(target, size);
+  }
+
+  private static void brotli(Path asset, long size) throws IOException, InterruptedException {
+    Path target = Paths.get(asset + ".br");
+    Process process = new ProcessBuilder("brotli", "--best", "--force", "--output=" + target, asset.toString())
+        .redirectErrorStream(true)
+        .redirectOutput(new File(System.getProperty("java.io.tmpdir"), "brotli.log"))
+        .start();
+
+    if (!process.waitFor(1, TimeUnit.MINUTES) || process.exitValue() != 0) {
+      process.destroy();
+      Files.deleteIfExists(target);
+      return;
+    }
+
+    keepIfSmaller(target, size);
+  }
+
+  private static void keepIfSmaller(Path variant, long originalSize) throws IOException {
+    if (Files.size(variant) > originalSize * 0.9) {
+      Files.delete(variant);
+    }
+  }
+
+  private static boolean brotliAvailable() {
+    try {
+      Process process = new ProcessBuilder("brotli", "--version").redirectErrorStream(true).start();
+
+      return process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+    } catch (IOException | InterruptedException e) {
+      return false;
+    }
+  }
+
+  private static boolean isCompressible(Path file) {
+    String name = file.getFileName().toString();
+    int dot = name.lastIndexOf('.');
+
+    return dot > 0 && EXTENSIONS.contains(name.substring(dot + 1).toLowerCase());
+  }
+
+  // images and fonts are already compressed
+  private static final List<String> EXTENSIONS = Arrays.asList("css", "js", "map", "html", "svg", "json", "txt", "xml", "ico");
+}
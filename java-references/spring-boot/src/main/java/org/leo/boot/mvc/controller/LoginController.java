@@ -1,10 +1,16 @@
 package org.leo.boot.mvc.controller;
 
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
 import javax.validation.Valid;
 
 import org.leo.boot.data.model.User;
+import org.leo.boot.data.model.UserSummary;
 import org.leo.boot.data.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
@@ -46,29 +52,49 @@ public class LoginController {
   @RequestMapping(value = "/registration", method = RequestMethod.POST)
   public ModelAndView createNewUser(@Valid User user, BindingResult bindingResult) {
     ModelAndView modelAndView = new ModelAndView();
-    User userExists = userService.findUserByEmail(user.getEmail());
-    
-    if (userExists != null) {
+    // only a valid email is looked up
+    if (!bindingResult.hasErrors() && userService.isEmailRegistered(user.getEmail())) {
       bindingResult.rejectValue("email", "error.user", "There is already a user registered with the email provided");
     }
     
     if (bindingResult.hasErrors()) {
       modelAndView.setViewName("registration");
     } else {
-      userService.saveUser(user);
-      modelAndView.addObject("successMessage", "User has been registered successfully");
-      modelAndView.addObject("user", new User());
+      try {
+        userService.saveUser(user);
+        modelAndView.addObject("successMessage", "User has been registered successfully");
+        modelAndView.addObject("user", new User());
+      } catch (DataIntegrityViolationException e) {
+        // same email registered concurrently, caught by the unique index on user.email
+        bindingResult.rejectValue("email", "error.user", "There is already a user registered with the email provided");
+      } catch (RejectedExecutionException e) {
+        // the password hashing pool is saturated, the user can simply retry
+        bindingResult.reject("error.user", "Too many registrations at the moment, please retry in a few seconds");
+      }
       modelAndView.setViewName("registration");
     }
     
     return modelAndView;
   }
 
+  /**
+   * The displayed fields are read once per session with a projection query, then served from the session
+   * In stateless token mode there is no session to keep them in, and none is created
+   */
   @RequestMapping(value="/admin/home", method = RequestMethod.GET)
-  public ModelAndView home(){
+  public ModelAndView home(HttpServletRequest request){
     ModelAndView modelAndView = new ModelAndView();
     Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-    User user = userService.findUserByEmail(auth.getName());
+    HttpSession session = request.getSession(false);
+    UserSummary user = session != null ? (UserSummary) session.getAttribute(USER_SUMMARY_ATTRIBUTE) : null;
+    
+    if (user == null || !user.getEmail().equals(auth.getName())) {
+      user = userService.findUserSummaryByEmail(auth.getName());
+      
+      if (session != null) {
+        session.setAttribute(USER_SUMMARY_ATTRIBUTE, user);
+      }
+    }
     
     modelAndView.addObject("userName", "Welcome " + user.getName() + " " + user.getLastName() + " (" + user.getEmail() + ")");
     modelAndView.addObject("adminMessage","Content Available Only for Users with Admin Role");
@@ -76,6 +102,8 @@ public class LoginController {
     return modelAndView;
   }
 
+  private static final String USER_SUMMARY_ATTRIBUTE = "userSummary";
+
   @Autowired
   private UserService userService;
 }
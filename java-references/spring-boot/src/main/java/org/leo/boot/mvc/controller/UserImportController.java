@@ -0,0 +1,93 @@
+package org.leo.boot.mvc.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.leo.boot.data.model.User;
+import org.leo.boot.data.service.UserImportReport;
+import org.leo.boot.data.service.UserImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Bulk user import endpoint, under /admin so it is reserved to admins
+ * Expects a JSON array of users : [{"email": ..., "password": ..., "name": ..., "lastName": ...}, ...]
+ * The body is refused above users.import.max-bytes, it is read before being parsed so it is never held in memory
+ * whole when too large, chunked or not
+ * @author fahdessid
+ */
+@RestController
+@RequestMapping("/admin/users/import")
+public class UserImportController {
+
+  @RequestMapping(method = RequestMethod.POST)
+  public ResponseEntity<Map<String, Object>> importUsers(HttpServletRequest request) throws IOException {
+    Map<String, Object> response = new LinkedHashMap<String, Object>();
+    byte[] body = request.getContentLengthLong() > maxBytes ? null : read(request.getInputStream());
+
+    if (body == null) {
+      response.put("message", "Import larger than " + maxBytes + " bytes, split it");
+      return new ResponseEntity<Map<String, Object>>(response, HttpStatus.PAYLOAD_TOO_LARGE);
+    }
+
+    List<User> users;
+
+    try {
+      users = objectMapper.readValue(body, USERS);
+    } catch (JsonProcessingException e) {
+      response.put("message", "Expected a JSON array of users : " + e.getOriginalMessage());
+      return new ResponseEntity<Map<String, Object>>(response, HttpStatus.BAD_REQUEST);
+    }
+
+    UserImportReport report = userImportService.importUsers(users);
+
+    response.put("message", report.getImported() + " users imported");
+    response.put("report", report);
+
+    return new ResponseEntity<Map<String, Object>>(response, HttpStatus.OK);
+  }
+
+  /**
+   * @return the body, null when it is longer than maxBytes
+   */
+  private byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    int read;
+
+    while ((read = in.read(buffer)) != -1) {
+      if (body.size() + read > maxBytes) {
+        return null;
+      }
+      body.write(buffer, 0, read);
+    }
+
+    return body.toByteArray();
+  }
+
+  private static final TypeReference<List<User>> USERS = new TypeReference<List<User>>() {};
+
+  @Autowired
+  private UserImportService userImportService;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Value("${users.import.max-bytes:10485760}")
+  private long maxBytes;
+}
@@ -0,0 +1,54 @@
+package org.leo.boot.rest.api;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.leo.boot.data.history.HistoryBucket;
+import org.leo.boot.data.history.HistoryPoint;
+import org.leo.boot.data.history.ItemHistory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Quantity and rank history of an item, from and to as ISO date times (the last day by default)
+ * /item/{itemId}/history : every change, from items.history.max-range-buckets buckets at most
+ * /item/{itemId}/history/downsampled : min, max and last values per stepHours, computed by MongoDB
+ * @author fahdessid
+ */
+@RestController
+@RequestMapping("/item/{itemId}/history")
+@ConditionalOnProperty(name = "items.history.enabled", havingValue = "true")
+public class ItemHistoryController {
+
+  @RequestMapping(method = RequestMethod.GET)
+  public List<HistoryPoint> getHistory(@PathVariable("itemId") String itemId,
+      @RequestParam(value = "from", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date from,
+      @RequestParam(value = "to", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date to) {
+    Date end = to != null ? to : new Date();
+
+    return itemHistory.range(itemId, from != null ? from : new Date(end.getTime() - DAY), end);
+  }
+
+  @RequestMapping(method = RequestMethod.GET, value = "/downsampled")
+  public List<HistoryBucket> getDownsampledHistory(@PathVariable("itemId") String itemId,
+      @RequestParam(value = "from", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date from,
+      @RequestParam(value = "to", required = false) @DateTimeFormat(iso = ISO.DATE_TIME) Date to,
+      @RequestParam(value = "stepHours", defaultValue = "1") int stepHours) {
+    Date end = to != null ? to : new Date();
+
+    return itemHistory.downsample(itemId, from != null ? from : new Date(end.getTime() - DAY), end, stepHours);
+  }
+
+  private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+  @Autowired
+  private ItemHistory itemHistory;
+}
@@ -0,0 +1,70 @@
+package org.leo.boot.rest.api;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.leo.boot.data.reservation.StockReservations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * REST controller for item stock reservations : reserve, confirm and release
+ * @author fahdessid
+ */
+@RestController
+@RequestMapping("/reservation")
+@ConditionalOnProperty(name = "items.reservation.enabled", havingValue = "true")
+public class ReservationController {
+
+  @RequestMapping(method = RequestMethod.POST)
+  public ResponseEntity<Map<String, Object>> reserve(@RequestBody Map<String, Object> reservationMap) {
+    String itemId = reservationMap.get("itemId").toString();
+    int quantity = Integer.parseInt(reservationMap.get("quantity").toString());
+    String reservationId = stockReservations.reserve(itemId, quantity);
+
+    Map<String, Object> response = new LinkedHashMap<String, Object>();
+
+    if (reservationId == null) {
+      response.put("message", "Not enough stock for item " + itemId);
+      response.put("available", stockReservations.available(itemId));
+      return new ResponseEntity<Map<String, Object>>(response, HttpStatus.CONFLICT);
+    }
+
+    response.put("message", "Item reserved successfully");
+    response.put("reservationId", reservationId);
+
+    return new ResponseEntity<Map<String, Object>>(response, HttpStatus.CREATED);
+  }
+
+  @RequestMapping(method = RequestMethod.PUT, value = "/{reservationId}")
+  public ResponseEntity<Map<String, Object>> confirm(@PathVariable("reservationId") String reservationId) {
+    return answer(stockReservations.confirm(reservationId), "Reservation " + reservationId + " confirmed");
+  }
+
+  @RequestMapping(method = RequestMethod.DELETE, value = "/{reservationId}")
+  public ResponseEntity<Map<String, Object>> release(@PathVariable("reservationId") String reservationId) {
+    return answer(stockReservations.release(reservationId), "Reservation " + reservationId + " released");
+  }
+
+  private ResponseEntity<Map<String, Object>> answer(boolean done, String message) {
+    Map<String, Object> response = new LinkedHashMap<String, Object>();
+
+    if (!done) {
+      response.put("message", "Reservation not found, it may have expired");
+      return new ResponseEntity<Map<String, Object>>(response, HttpStatus.NOT_FOUND);
+    }
+
+    response.put("message", message);
+    return new ResponseEntity<Map<String, Object>>(response, HttpStatus.OK);
+  }
+
+  @Autowired
+  private StockReservations stockReservations;
+}
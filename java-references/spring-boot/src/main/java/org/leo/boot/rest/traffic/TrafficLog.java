@@ -0,0 +1,115 @@
+package org.leo.boot.rest.traffic;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Binary format of the recorded traffic, about 30 bytes per request plus its body
+ * Header : magic "TRF1", start of the recording (epoch millis)
+ * Record : method (index in METHODS, or 255 then its name), start (varint micros), duration (varint micros),
+ * status (varint), path and query (UTF), content type (UTF, empty without body), body (varint length, bytes)
+ * Records are in completion order, readers sort them by start
+ * @author fahdessid
+ */
+public final class TrafficLog {
+
+  private TrafficLog() {
+  }
+
+  public static void writeHeader(DataOutputStream out, long startMillis) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeLong(startMillis);
+  }
+
+  /**
+   * @return the number of bytes written
+   */
+  public static int write(DataOutputStream out, TrafficRecord record) throws IOException {
+    int before = out.size();
+    int method = METHODS.indexOf(record.getMethod());
+
+    out.writeByte(method >= 0 ? method : OTHER_METHOD);
+    if (method < 0) {
+      out.writeUTF(record.getMethod());
+    }
+    writeVarLong(out, record.getStartMicros());
+    writeVarLong(out, record.getDurationMicros());
+    writeVarLong(out, record.getStatus());
+    out.writeUTF(record.getUri());
+    out.writeUTF(record.getContentType() != null ? record.getContentType() : "");
+    writeVarLong(out, record.getBody().length);
+    out.write(record.getBody());
+
+    return out.size() - before;
+  }
+
+  /**
+   * @return the records sorted by start, a record cut by the end of a file still being written is ignored
+   */
+  public static List<TrafficRecord> read(DataInputStream in) throws IOException {
+    if (in.readInt() != MAGIC) {
+      throw new IOException("Not a traffic log");
+    }
+    in.readLong();
+
+    List<TrafficRecord> records = new ArrayList<TrafficRecord>();
+
+    for (;;) {
+      int method = in.read();
+
+      if (method < 0) {
+        break;
+      }
+
+      try {
+        String methodName = method == OTHER_METHOD ? in.readUTF() : METHODS.get(method);
+        long startMicros = readVarLong(in);
+        long durationMicros = readVarLong(in);
+        int status = (int) readVarLong(in);
+        String uri = in.readUTF();
+        String contentType = in.readUTF();
+        byte[] body = new byte[(int) readVarLong(in)];
+
+        in.readFully(body);
+        records.add(new TrafficRecord(startMicros, methodName, uri, contentType.isEmpty() ? null : contentType, body,
+            status, durationMicros));
+      } catch (EOFException e) {
+        break;
+      }
+    }
+
+    records.sort((a, b) -> Long.compare(a.getStartMicros(), b.getStartMicros()));
+    return records;
+  }
+
+  private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte((int) value);
+  }
+
+  private static long readVarLong(DataInputStream in) throws IOException {
+    long value = 0;
+
+    for (int shift = 0; shift < 64; shift += 7) {
+      int b = in.readUnsignedByte();
+
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint");
+  }
+
+  private static final int MAGIC = 0x54524631;
+  private static final int OTHER_METHOD = 255;
+  private static final List<String> METHODS = Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "HEAD", "OPTIONS");
+}
@@ -0,0 +1,58 @@
+package org.leo.boot.rest.traffic;
+
+/**
+ * One recorded HTTP request : what the client sent (method, path and query, body) and what it got (status, duration)
+ * startMicros is the start of the request, in microseconds since the start of the recording
+ * @author fahdessid
+ */
+public class TrafficRecord {
+
+  public TrafficRecord(long startMicros, String method, String uri, String contentType, byte[] body, int status, long durationMicros) {
+    this.startMicros = startMicros;
+    this.method = method;
+    this.uri = uri;
+    this.contentType = contentType;
+    this.body = body;
+    this.status = status;
+    this.durationMicros = durationMicros;
+  }
+
+  public long getStartMicros() {
+    return startMicros;
+  }
+
+  public String getMethod() {
+    return method;
+  }
+
+  public String getUri() {
+    return uri;
+  }
+
+  /**
+   * @return null when the request has no body
+   */
+  public String getContentType() {
+    return contentType;
+  }
+
+  public byte[] getBody() {
+    return body;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public long getDurationMicros() {
+    return durationMicros;
+  }
+
+  private final long startMicros;
+  private final String method;
+  private final String uri;
+  private final String contentType;
+  private final byte[] body;
+  private final int status;
+  private final long durationMicros;
+}
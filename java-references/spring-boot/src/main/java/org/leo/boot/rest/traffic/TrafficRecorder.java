@@ -0,0 +1,155 @@
+package org.leo.boot.rest.traffic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+/**
+ * Appends the recorded requests to a TrafficLog file, traffic-{start millis}.bin in the given directory
+ * The request threads only queue their record, a single thread writes them : when the queue is full or the file
+ * reached maxBytes the records are dropped, recording never slows the requests down
+ * @author fahdessid
+ */
+public class TrafficRecorder implements PublicMetrics {
+
+  public TrafficRecorder(File directory, long maxBytes, int queueCapacity) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.queue = new ArrayBlockingQueue<TrafficRecord>(queueCapacity);
+  }
+
+  public void start() throws IOException {
+    long startMillis = System.currentTimeMillis();
+
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Cannot create " + directory);
+    }
+
+    file = new File(directory, "traffic-" + startMillis + ".bin");
+    out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+    TrafficLog.writeHeader(out, startMillis);
+    startNanos = System.nanoTime();
+
+    writer = new Thread(this::writeLoop, "traffic-recorder");
+    writer.setDaemon(true);
+    writer.start();
+
+    LOGGER.info("Recording traffic to {}", file);
+  }
+
+  /**
+   * @return the time since the start of the recording, for TrafficRecord.startMicros
+   */
+  public long elapsedMicros(long nanoTime) {
+    return Math.max(0, (nanoTime - startNanos) / 1000);
+  }
+
+  public void record(TrafficRecord record) {
+    if (full || !queue.offer(record)) {
+      dropped.increment();
+    }
+  }
+
+  public void close() throws InterruptedException {
+    if (writer != null) {
+      writer.interrupt();
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("traffic.recorded", recorded.sum()));
+    metrics.add(new Metric<Long>("traffic.dropped", dropped.sum()));
+    metrics.add(new Metric<Long>("traffic.bytes", bytes));
+    metrics.add(new Metric<Integer>("traffic.queued", queue.size()));
+
+    return metrics;
+  }
+
+  private void writeLoop() {
+    try {
+      for (;;) {
+        TrafficRecord record = queue.poll();
+
+        if (record == null) {
+          // idle : what was written is made readable
+          out.flush();
+          record = queue.take();
+        }
+        write(record);
+      }
+    } catch (InterruptedException e) {
+      // closing : the records already queued are still written
+      TrafficRecord record;
+
+      while ((record = queue.poll()) != null) {
+        write(record);
+      }
+    } catch (IOException e) {
+      LOGGER.error("Traffic recording to {} stopped", file, e);
+    } finally {
+      full = true;
+      closeQuietly();
+    }
+  }
+
+  private void write(TrafficRecord record) {
+    if (full) {
+      dropped.increment();
+      return;
+    }
+
+    try {
+      bytes += TrafficLog.write(out, record);
+      recorded.increment();
+    } catch (IOException e) {
+      LOGGER.error("Traffic recording to {} stopped", file, e);
+      full = true;
+    }
+
+    if (bytes >= maxBytes) {
+      LOGGER.info("Traffic recording to {} stopped at {} bytes", file, bytes);
+      full = true;
+    }
+  }
+
+  private void closeQuietly() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      LOGGER.debug("Closing {} failed", file, e);
+    }
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(TrafficRecorder.class);
+
+  private final File directory;
+  private final long maxBytes;
+  private final BlockingQueue<TrafficRecord> queue;
+  private final LongAdder recorded = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private File file;
+  private DataOutputStream out;
+  private Thread writer;
+  private long startNanos;
+  /** written by the writer thread only */
+  private volatile long bytes;
+  private volatile boolean full;
+}
@@ -0,0 +1,58 @@
+package org.leo.boot.rest.traffic;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingRequestWrapper;
+
+/**
+ * Records a sample of the requests it is mapped on to a TrafficRecorder, to replay them later with the TrafficReplayer
+ * The body is kept as the application reads it, a request with a body larger than maxBodyBytes is not recorded
+ * (it could not be replayed faithfully)
+ * @author fahdessid
+ */
+public class TrafficRecordingFilter extends OncePerRequestFilter {
+
+  public TrafficRecordingFilter(TrafficRecorder recorder, double sampleRate, int maxBodyBytes) {
+    this.recorder = recorder;
+    this.sampleRate = sampleRate;
+    this.maxBodyBytes = maxBodyBytes;
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    if (ThreadLocalRandom.current().nextDouble() >= sampleRate || request.getContentLengthLong() > maxBodyBytes) {
+      filterChain.doFilter(request, response);
+      return;
+    }
+
+    // one byte over the limit tells a chunked body too large apart from one of exactly maxBodyBytes
+    ContentCachingRequestWrapper wrapper = new ContentCachingRequestWrapper(request, maxBodyBytes + 1);
+    long start = System.nanoTime();
+
+    try {
+      filterChain.doFilter(wrapper, response);
+    } finally {
+      long end = System.nanoTime();
+      byte[] body = wrapper.getContentAsByteArray();
+
+      if (body.length <= maxBodyBytes) {
+        String uri = request.getQueryString() == null ? request.getRequestURI() : request.getRequestURI() + "?" + request.getQueryString();
+
+        recorder.record(new TrafficRecord(recorder.elapsedMicros(start), request.getMethod(), uri,
+            body.length > 0 ? request.getContentType() : null, body, response.getStatus(), (end - start) / 1000));
+      }
+    }
+  }
+
+  private final TrafficRecorder recorder;
+  private final double sampleRate;
+  private final int maxBodyBytes;
+}
@@ -0,0 +1,68 @@
+package org.leo.boot.security;
+
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * Picks the BCrypt strength matching a target hashing time on the current hardware
+ * Every strength step doubles the hashing time, so the highest strength under the target is the best trade-off
+ * between brute force resistance and CPU spent per login
+ * Hashes created with another strength keep working : the strength is stored in each hash
+ * @author fahdessid
+ */
+public final class BCryptCalibration {
+
+  private BCryptCalibration() {
+  }
+
+  /**
+   * @return the highest strength hashing in less than targetMillis, never below minStrength
+   */
+  public static int calibrate(long targetMillis, int minStrength, int maxStrength) {
+    int strength = minStrength;
+    long millis = measure(minStrength);
+
+    LOGGER.info("BCrypt strength {} takes {}ms", minStrength, millis);
+
+    while (strength < maxStrength) {
+      long next = measure(strength + 1);
+
+      LOGGER.info("BCrypt strength {} takes {}ms", strength + 1, next);
+
+      if (next > targetMillis) {
+        break;
+      }
+      strength++;
+      millis = next;
+    }
+
+    LOGGER.info("BCrypt strength calibrated to {} ({}ms per hash, target {}ms)", strength, millis, targetMillis);
+    return strength;
+  }
+
+  /**
+   * Median of a few hashes after a warm up one, in milliseconds
+   */
+  static long measure(int strength) {
+    BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+    long[] samples = new long[SAMPLES];
+
+    encoder.encode(SAMPLE_PASSWORD);
+
+    for (int i = 0; i < SAMPLES; i++) {
+      long start = System.nanoTime();
+      encoder.encode(SAMPLE_PASSWORD);
+      samples[i] = (System.nanoTime() - start) / 1000000;
+    }
+
+    Arrays.sort(samples);
+    return samples[SAMPLES / 2];
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BCryptCalibration.class);
+  private static final int SAMPLES = 3;
+  private static final String SAMPLE_PASSWORD = "calibration-password";
+}
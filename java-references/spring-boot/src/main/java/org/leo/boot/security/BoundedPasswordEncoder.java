@@ -0,0 +1,92 @@
+package org.leo.boot.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+/**
+ * PasswordEncoder running the hashing of its delegate on a dedicated bounded pool
+ * BCrypt is made to be slow, when it runs on the Tomcat threads a burst of logins or registrations takes every one of them.
+ * Here at most "threads" hashes run at the same time, at most "queueSize" wait, anything above is rejected right away
+ * instead of piling up, and a caller never waits more than timeoutMillis
+ * @author fahdessid
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+  public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueSize, long timeoutMillis) {
+    AtomicInteger threadNumber = new AtomicInteger();
+
+    this.delegate = delegate;
+    this.timeoutMillis = timeoutMillis;
+    this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queueSize), runnable -> {
+          Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * @throws RejectedExecutionException when the hashing pool is saturated
+   */
+  @Override
+  public String encode(CharSequence rawPassword) {
+    return call(() -> delegate.encode(rawPassword));
+  }
+
+  /**
+   * Saturation is reported as an AuthenticationServiceException so a rejected login ends on the login failure page
+   */
+  @Override
+  public boolean matches(CharSequence rawPassword, String encodedPassword) {
+    try {
+      return call(() -> delegate.matches(rawPassword, encodedPassword));
+    } catch (RejectedExecutionException e) {
+      throw new AuthenticationServiceException("Too many concurrent logins, please retry", e);
+    }
+  }
+
+  /**
+   * The wrapped encoder, for batch jobs bringing their own threads so they do not compete with logins for this pool
+   */
+  public PasswordEncoder getDelegate() {
+    return delegate;
+  }
+
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private <T> T call(Callable<T> task) {
+    Future<T> future = executor.submit(task);
+
+    try {
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new RejectedExecutionException("Password hashing timed out after " + timeoutMillis + "ms", e);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new RejectedExecutionException("Interrupted while waiting for password hashing", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private final PasswordEncoder delegate;
+  private final long timeoutMillis;
+  private final ThreadPoolExecutor executor;
+}
@@ -0,0 +1,153 @@
+package org.leo.boot.security;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.web.authentication.AuthenticationFailureHandler;
+import org.springframework.security.web.authentication.SimpleUrlAuthenticationFailureHandler;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Login throttling : failed logins are counted per IP and per email over a sliding window,
+ * once a threshold is reached further login attempts are rejected before any BCrypt verification is paid
+ * Counters live in two Count-Min sketches, so memory is fixed whatever the number of attacking IPs or tried emails
+ * They are sized for the expected number of failures per window : below it, the collisions of distinct IPs or emails
+ * do not lock out the ones that never failed
+ * @author fahdessid
+ */
+public class LoginThrottle implements PublicMetrics {
+
+  /**
+   * @param expectedFailures failed logins per window the sketches are sized for
+   */
+  public LoginThrottle(int maxFailuresPerIp, int maxFailuresPerEmail, long windowSeconds, long expectedFailures,
+      String loginUrl, String failureUrl) {
+    // 10 slices per window, 4 rows per slice
+    long sliceMillis = Math.max(1, windowSeconds * 1000 / 10);
+
+    this.perIp = new WindowedCountMinSketch(4, width(expectedFailures, maxFailuresPerIp), 10, sliceMillis);
+    this.perEmail = new WindowedCountMinSketch(4, width(expectedFailures, maxFailuresPerEmail), 10, sliceMillis);
+    this.maxFailuresPerIp = maxFailuresPerIp;
+    this.maxFailuresPerEmail = maxFailuresPerEmail;
+    this.windowSeconds = windowSeconds;
+    this.loginUrl = loginUrl;
+    this.failureHandler = new SimpleUrlAuthenticationFailureHandler(failureUrl);
+  }
+
+  /**
+   * Filter to put before the authentication filter, it only looks at login form submissions
+   */
+  public OncePerRequestFilter filter() {
+    return new OncePerRequestFilter() {
+
+      @Override
+      protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+          throws ServletException, IOException {
+        if ("POST".equals(request.getMethod()) && loginUrl.equals(request.getServletPath())) {
+          if (perIp.estimate(request.getRemoteAddr()) >= maxFailuresPerIp) {
+            rejectedByIp.increment();
+            reject(response);
+            return;
+          }
+
+          String email = request.getParameter("email");
+
+          if (email != null && perEmail.estimate(normalize(email)) >= maxFailuresPerEmail) {
+            rejectedByEmail.increment();
+            reject(response);
+            return;
+          }
+        }
+
+        filterChain.doFilter(request, response);
+      }
+    };
+  }
+
+  /**
+   * Failure handler of the login form : counts the failure, then redirects to the failure url as usual
+   */
+  public AuthenticationFailureHandler failureHandler() {
+    return (request, response, exception) -> {
+      recordFailure(request, exception);
+      failureHandler.onAuthenticationFailure(request, response, exception);
+    };
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("login.throttle.failures", failures.sum()));
+    metrics.add(new Metric<Long>("login.throttle.rejected.ip", rejectedByIp.sum()));
+    metrics.add(new Metric<Long>("login.throttle.rejected.email", rejectedByEmail.sum()));
+    metrics.add(new Metric<Long>("login.throttle.memory.bytes", perIp.getMemoryBytes() + perEmail.getMemoryBytes()));
+
+    return metrics;
+  }
+
+  /**
+   * Only wrong credentials count, a login refused because the hashing pool is saturated is not the user's fault
+   */
+  private void recordFailure(HttpServletRequest request, AuthenticationException exception) {
+    if (!(exception instanceof BadCredentialsException)) {
+      return;
+    }
+
+    failures.increment();
+    perIp.add(request.getRemoteAddr());
+
+    String email = request.getParameter("email");
+
+    if (email != null) {
+      perEmail.add(normalize(email));
+    }
+  }
+
+  private void reject(HttpServletResponse response) throws IOException {
+    // written directly rather than with sendError, the error page dispatch would be redirected to the login page
+    response.setStatus(TOO_MANY_REQUESTS);
+    response.setHeader("Retry-After", Long.toString(windowSeconds));
+    response.setContentType("text/plain;charset=UTF-8");
+    response.getWriter().write("Too many failed logins, please retry later");
+  }
+
+  /**
+   * e.n / threshold columns, at least 2048, at most what the 40 rows of a sketch can hold in one array
+   */
+  private static int width(long expectedFailures, int threshold) {
+    long width = (long) Math.ceil(Math.E * expectedFailures / Math.max(1, threshold));
+
+    return (int) Math.min(Integer.MAX_VALUE / 40, Math.max(2048, width));
+  }
+
+  private static String normalize(String email) {
+    return email.trim().toLowerCase(Locale.ROOT);
+  }
+
+  private static final int TOO_MANY_REQUESTS = 429;
+
+  private final WindowedCountMinSketch perIp;
+  private final WindowedCountMinSketch perEmail;
+  private final int maxFailuresPerIp;
+  private final int maxFailuresPerEmail;
+  private final long windowSeconds;
+  private final String loginUrl;
+  private final AuthenticationFailureHandler failureHandler;
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder rejectedByIp = new LongAdder();
+  private final LongAdder rejectedByEmail = new LongAdder();
+}
@@ -0,0 +1,183 @@
+package org.leo.boot.security;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.util.AntPathMatcher;
+
+/**
+ * Ant patterns compiled into a trie of path segments : a path is split once and walked down the trie, instead of
+ * being matched against every pattern in turn
+ * Literal segments are a hash lookup, "*" and "**" are children of their own, the other segments with wildcards or
+ * {variables} ("*.css", "v?") are matched by AntPathMatcher, segment per segment
+ * Same results as AntPathMatcher.match(pattern, path) : empty segments are ignored, a trailing separator must be
+ * in both, except for the patterns having a "**" (and after a last "*", which matches "/admin/" as AntPathMatcher does)
+ * When several patterns match, the value of the first one added is returned, as the first matching rule of a
+ * linear evaluation
+ * Built once, then read only : safe for concurrent matching
+ * @author fahdessid
+ */
+public class PathTrie<T> {
+
+  public PathTrie<T> add(String pattern, T value) {
+    Node node = root;
+    List<String> segments = segments(pattern);
+
+    root.firstOrder = Math.min(root.firstOrder, size);
+
+    for (int i = 0; i < segments.size(); i++) {
+      String segment = segments.get(i);
+
+      if (DOUBLE_STAR.equals(segment)) {
+        if (node.doubleStar == null) {
+          node.doubleStar = new Node();
+        }
+        node = node.doubleStar;
+        // "**/**" is "**"
+        while (i + 1 < segments.size() && DOUBLE_STAR.equals(segments.get(i + 1))) {
+          i++;
+        }
+      } else if (STAR.equals(segment)) {
+        if (node.star == null) {
+          node.star = new Node();
+        }
+        node = node.star;
+      } else if (hasWildcard(segment)) {
+        Node child = node.wildcards.get(segment);
+
+        if (child == null) {
+          child = new Node();
+          node.wildcards.put(segment, child);
+          node.wildcardPatterns.add(segment);
+        }
+        node = child;
+      } else {
+        node = node.literals.computeIfAbsent(segment, s -> new Node());
+      }
+      node.firstOrder = Math.min(node.firstOrder, size);
+    }
+
+    if (node.value == null) {
+      node.value = value;
+      node.order = size;
+    }
+    size++;
+    return this;
+  }
+
+  /**
+   * @return the value of the first added pattern matching the path, null if none
+   */
+  public T match(String path) {
+    Match<T> match = new Match<T>();
+
+    match(root, segments(path), 0, false, match);
+    return match.value;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private void match(Node node, List<String> segments, int index, boolean afterDoubleStar, Match<T> match) {
+    // nothing below was added before the best match so far
+    if (node.firstOrder >= match.order) {
+      return;
+    }
+    if (index == segments.size()) {
+      match.offer(node);
+      // "/a/**" matches "/a"
+      if (node.doubleStar != null) {
+        match.offer(node.doubleStar);
+      }
+      return;
+    }
+
+    String segment = segments.get(index);
+
+    if (afterDoubleStar && segment.isEmpty()) {
+      // AntPathMatcher does not check the trailing separator of the path once a "**" was met
+      match.offer(node);
+    }
+    Node literal = node.literals.get(segment);
+
+    if (literal != null) {
+      match(literal, segments, index + 1, afterDoubleStar, match);
+    }
+    if (node.star != null && (!segment.isEmpty() || index == segments.size() - 1)) {
+      match(node.star, segments, index + 1, afterDoubleStar, match);
+    }
+    for (String pattern : node.wildcardPatterns) {
+      if (!segment.isEmpty() && SEGMENT_MATCHER.match(pattern, segment)) {
+        match(node.wildcards.get(pattern), segments, index + 1, afterDoubleStar, match);
+      }
+    }
+    if (node.doubleStar != null) {
+      // "**" takes zero or more segments
+      for (int next = index; next <= segments.size(); next++) {
+        match(node.doubleStar, segments, next, true, match);
+      }
+    }
+  }
+
+  /**
+   * The non empty segments, followed by an empty one when the path ends with the separator
+   */
+  private static List<String> segments(String path) {
+    List<String> segments = new ArrayList<String>(8);
+    int start = 0;
+
+    for (int i = 0; i <= path.length(); i++) {
+      if (i == path.length() || path.charAt(i) == '/') {
+        if (i > start) {
+          segments.add(path.substring(start, i));
+        }
+        start = i + 1;
+      }
+    }
+    if (path.endsWith("/")) {
+      segments.add("");
+    }
+    return segments;
+  }
+
+  private static boolean hasWildcard(String segment) {
+    return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0;
+  }
+
+  private static final class Node {
+
+    private final Map<String, Node> literals = new HashMap<String, Node>(4);
+    private final Map<String, Node> wildcards = new HashMap<String, Node>(2);
+    private final List<String> wildcardPatterns = new ArrayList<String>(2);
+    private Node star;
+    private Node doubleStar;
+    private Object value;
+    private int order = Integer.MAX_VALUE;
+    // the first pattern ending at or below this node
+    private int firstOrder = Integer.MAX_VALUE;
+  }
+
+  private static final class Match<T> {
+
+    @SuppressWarnings("unchecked")
+    void offer(Node node) {
+      if (node.value != null && node.order < order) {
+        value = (T) node.value;
+        order = node.order;
+      }
+    }
+
+    private T value;
+    private int order = Integer.MAX_VALUE;
+  }
+
+  private static final String STAR = "*";
+  private static final String DOUBLE_STAR = "**";
+  private static final AntPathMatcher SEGMENT_MATCHER = new AntPathMatcher();
+
+  private final Node root = new Node();
+  private int size;
+}
@@ -0,0 +1,74 @@
+package org.leo.boot.security;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.security.web.util.matcher.RequestMatcher;
+
+/**
+ * Ordered request matching rules sharing one PathTrie, to replace a list of antMatchers evaluated one after the other
+ * Each matcher() is a rule : its RequestMatcher matches when it is the first rule matching the request path, which
+ * the trie finds in one walk, done once per request (the result is kept in a request attribute, with the path it was
+ * computed for). Registered in the same order as the rules, the matchers give the decisions of the linear evaluation,
+ * the following ones only compare the rule index
+ * The path is the servlet path and the path info, case sensitive, as for AntPathRequestMatcher
+ * @author fahdessid
+ */
+public class PathTrieRequestMatchers {
+
+  /**
+   * @param patterns ant patterns, this rule matches when one of them does
+   */
+  public RequestMatcher matcher(String... patterns) {
+    int rule = rules++;
+
+    for (String pattern : patterns) {
+      trie.add(pattern, rule);
+    }
+
+    return request -> firstRule(request) == rule;
+  }
+
+  /**
+   * @return the index of the first rule matching the request, -1 if none
+   */
+  public int firstRule(HttpServletRequest request) {
+    String path = path(request);
+    Object cached = request.getAttribute(attribute);
+
+    if (cached instanceof Match && ((Match) cached).path.equals(path)) {
+      return ((Match) cached).rule;
+    }
+
+    Integer rule = trie.match(path);
+    Match match = new Match(path, rule != null ? rule : -1);
+
+    request.setAttribute(attribute, match);
+    return match.rule;
+  }
+
+  public int size() {
+    return trie.size();
+  }
+
+  private static String path(HttpServletRequest request) {
+    String path = request.getServletPath();
+
+    return request.getPathInfo() != null ? path + request.getPathInfo() : path;
+  }
+
+  private static final class Match {
+
+    Match(String path, int rule) {
+      this.path = path;
+      this.rule = rule;
+    }
+
+    private final String path;
+    private final int rule;
+  }
+
+  private final PathTrie<Integer> trie = new PathTrie<Integer>();
+  // one attribute per instance, the web ignoring and the http rules are different instances
+  private final String attribute = PathTrieRequestMatchers.class.getName() + "." + System.identityHashCode(this);
+  private int rules;
+}
@@ -0,0 +1,116 @@
+package org.leo.boot.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+/**
+ * Compact signed tokens carrying the user id (the login email), the authorities and an expiry
+ * Format : base64url(email \n expiry epoch seconds \n authority,authority...) . base64url(HMAC-SHA256 of the first part)
+ * Verifying a token is one HMAC, no session and no database : any node sharing the secret accepts it
+ * @author fahdessid
+ */
+public class SignedTokenService {
+
+  /**
+   * @param secret the HMAC key, shared by every node; when empty a random key is generated and tokens die with this node
+   */
+  public SignedTokenService(byte[] secret, long ttlSeconds) {
+    if (secret == null || secret.length == 0) {
+      secret = new byte[32];
+      new SecureRandom().nextBytes(secret);
+    }
+    this.key = new SecretKeySpec(secret, ALGORITHM);
+    this.ttlSeconds = ttlSeconds;
+  }
+
+  public String createToken(Authentication authentication) {
+    StringBuilder payload = new StringBuilder()
+        .append(authentication.getName()).append('\n')
+        .append(System.currentTimeMillis() / 1000 + ttlSeconds).append('\n');
+    String separator = "";
+
+    for (GrantedAuthority authority : authentication.getAuthorities()) {
+      payload.append(separator).append(authority.getAuthority());
+      separator = ",";
+    }
+
+    byte[] payloadBytes = payload.toString().getBytes(StandardCharsets.UTF_8);
+
+    return ENCODER.encodeToString(payloadBytes) + "." + ENCODER.encodeToString(sign(payloadBytes));
+  }
+
+  /**
+   * @return the authentication carried by the token, or null if it is malformed, forged or expired
+   */
+  public Authentication parseToken(String token) {
+    int dot = token.indexOf('.');
+
+    if (dot <= 0) {
+      return null;
+    }
+
+    try {
+      byte[] payloadBytes = DECODER.decode(token.substring(0, dot));
+      byte[] signature = DECODER.decode(token.substring(dot + 1));
+
+      // constant time comparison, a timing difference would leak the valid signature byte after byte
+      if (!MessageDigest.isEqual(signature, sign(payloadBytes))) {
+        return null;
+      }
+
+      String[] fields = new String(payloadBytes, StandardCharsets.UTF_8).split("\n", -1);
+
+      if (fields.length != 3 || Long.parseLong(fields[1]) < System.currentTimeMillis() / 1000) {
+        return null;
+      }
+
+      Collection<GrantedAuthority> authorities = new ArrayList<GrantedAuthority>();
+
+      for (String authority : fields[2].split(",")) {
+        if (!authority.isEmpty()) {
+          authorities.add(new SimpleGrantedAuthority(authority));
+        }
+      }
+
+      return new UsernamePasswordAuthenticationToken(fields[0], null, authorities);
+    } catch (IllegalArgumentException e) {
+      // bad base64 or bad expiry number
+      return null;
+    }
+  }
+
+  public long getTtlSeconds() {
+    return ttlSeconds;
+  }
+
+  private byte[] sign(byte[] payload) {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac.doFinal(payload);
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new IllegalStateException("Cannot sign token", e);
+    }
+  }
+
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private final SecretKeySpec key;
+  private final long ttlSeconds;
+}
@@ -0,0 +1,81 @@
+package org.leo.boot.security;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.AuthenticationSuccessHandler;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Authenticates requests from the signed token found in the AUTH_TOKEN cookie or in an "Authorization: Bearer" header
+ * Used in stateless mode in place of the HTTP session, it is not a @Component on purpose : it belongs to the
+ * security filter chain only, not to the servlet filters
+ * @author fahdessid
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+  public static final String COOKIE_NAME = "AUTH_TOKEN";
+
+  public TokenAuthenticationFilter(SignedTokenService tokenService) {
+    this.tokenService = tokenService;
+  }
+
+  /**
+   * Form login success handler issuing the token cookie, then redirecting like defaultSuccessUrl
+   */
+  public static AuthenticationSuccessHandler issuingTokenCookie(SignedTokenService tokenService, String targetUrl) {
+    return (request, response, authentication) -> {
+      Cookie cookie = new Cookie(COOKIE_NAME, tokenService.createToken(authentication));
+
+      cookie.setHttpOnly(true);
+      cookie.setSecure(request.isSecure());
+      cookie.setPath("/");
+      cookie.setMaxAge((int) tokenService.getTtlSeconds());
+      response.addCookie(cookie);
+      response.sendRedirect(request.getContextPath() + targetUrl);
+    };
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+      throws ServletException, IOException {
+    String token = readToken(request);
+
+    if (token != null) {
+      Authentication authentication = tokenService.parseToken(token);
+
+      if (authentication != null) {
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+      }
+    }
+
+    filterChain.doFilter(request, response);
+  }
+
+  private static String readToken(HttpServletRequest request) {
+    String header = request.getHeader("Authorization");
+
+    if (header != null && header.startsWith("Bearer ")) {
+      return header.substring(7);
+    }
+
+    if (request.getCookies() != null) {
+      for (Cookie cookie : request.getCookies()) {
+        if (COOKIE_NAME.equals(cookie.getName())) {
+          return cookie.getValue();
+        }
+      }
+    }
+
+    return null;
+  }
+
+  private final SignedTokenService tokenService;
+}
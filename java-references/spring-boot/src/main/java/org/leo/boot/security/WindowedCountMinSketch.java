@@ -0,0 +1,131 @@
+package org.leo.boot.security;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min sketch over a sliding time window, approximate count of events per key in fixed memory
+ * whatever the number of keys (IPs, emails...)
+ *
+ * The window is split in "windows" slices of windowMillis, each slice is a depth x width counters table.
+ * A key is counted in one counter per row of the current slice, its estimate is the minimum over the rows
+ * of the sum over the live slices : it can be over estimated by collisions, never under estimated
+ * Conservative update : only the rows at that minimum are incremented, the others already count more than the key,
+ * which keeps the collisions of many distinct keys from raising every counter
+ * With n events per window, a width of e.n / threshold keeps the estimate of an unseen key under the threshold
+ * (with probability 1 - e^-depth without conservative update)
+ *
+ * Everything is lock free : a slice is recycled by the first thread seeing it is stale (CAS on its epoch), an increment
+ * racing with the recycling may be lost, which is fine for throttling
+ * The hash is seeded at random so keys colliding with a given key cannot be computed from outside
+ * @author fahdessid
+ */
+public class WindowedCountMinSketch {
+
+  public WindowedCountMinSketch(int depth, int width, int windows, long windowMillis) {
+    this.depth = depth;
+    this.width = width;
+    this.windows = windows;
+    this.windowMillis = windowMillis;
+    this.counts = new AtomicLongArray(windows * depth * width);
+    this.epochs = new AtomicLongArray(windows);
+    this.seed = ThreadLocalRandom.current().nextLong();
+  }
+
+  public void add(String key) {
+    long epoch = System.currentTimeMillis() / windowMillis;
+    int window = (int) (epoch % windows);
+    long hash = hash(key);
+
+    recycle(window, epoch);
+
+    long[] sums = new long[depth];
+    long estimate = Long.MAX_VALUE;
+
+    for (int row = 0; row < depth; row++) {
+      sums[row] = sum(row, hash, epoch);
+      estimate = Math.min(estimate, sums[row]);
+    }
+
+    for (int row = 0; row < depth; row++) {
+      if (sums[row] == estimate) {
+        counts.incrementAndGet(slot(window, row, hash));
+      }
+    }
+  }
+
+  public long estimate(String key) {
+    long epoch = System.currentTimeMillis() / windowMillis;
+    long hash = hash(key);
+    long estimate = Long.MAX_VALUE;
+
+    for (int row = 0; row < depth; row++) {
+      estimate = Math.min(estimate, sum(row, hash, epoch));
+    }
+
+    return estimate;
+  }
+
+  public long getMemoryBytes() {
+    return (counts.length() + epochs.length()) * 8L;
+  }
+
+  /**
+   * Sum of the counters of the row over the live slices
+   */
+  private long sum(int row, long hash, long epoch) {
+    long sum = 0;
+
+    for (int window = 0; window < windows; window++) {
+      if (epochs.get(window) > epoch - windows) {
+        sum += counts.get(slot(window, row, hash));
+      }
+    }
+
+    return sum;
+  }
+
+  private void recycle(int window, long epoch) {
+    long seen = epochs.get(window);
+
+    if (seen != epoch && epochs.compareAndSet(window, seen, epoch)) {
+      int start = window * depth * width;
+
+      for (int i = start; i < start + depth * width; i++) {
+        counts.set(i, 0);
+      }
+    }
+  }
+
+  /**
+   * Double hashing, row i uses h1 + i.h2
+   */
+  private int slot(int window, int row, long hash) {
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32) | 1;
+    int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+
+    return (window * depth + row) * width + column;
+  }
+
+  private long hash(String key) {
+    long hash = seed;
+
+    for (int i = 0; i < key.length(); i++) {
+      hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+    }
+
+    // splitmix64 finalizer, spreads the bits over the two halves used by slot()
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+
+  private final int depth;
+  private final int width;
+  private final int windows;
+  private final long windowMillis;
+  private final AtomicLongArray counts;
+  private final AtomicLongArray epochs;
+  private final long seed;
+}
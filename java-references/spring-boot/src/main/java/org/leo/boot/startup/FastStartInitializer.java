@@ -0,0 +1,94 @@
+package org.leo.boot.startup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import org.springframework.util.StringUtils;
+
+/**
+ * Fast start mode, enabled with startup.fast.enabled=true (fast-start profile)
+ * - every bean is lazy, except the infrastructure ones and startup.lazy-init.excludes : a bean is created by its first use,
+ *   so the first requests pay what the startup no longer pays, and a broken bean shows up then instead of at startup
+ * - the component scan skips the packages given by the application, through the TypeExcludeFilter
+ *   that @SpringBootApplication applies to its scan
+ * @author fahdessid
+ */
+public class FastStartInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+  /**
+   * @param scanExcludes packages the application does not need in fast start mode
+   */
+  public FastStartInitializer(String... scanExcludes) {
+    this.scanExcludes = scanExcludes;
+  }
+
+  @Override
+  public void initialize(ConfigurableApplicationContext context) {
+    Environment environment = context.getEnvironment();
+
+    if (!environment.getProperty("startup.fast.enabled", Boolean.class, false)) {
+      return;
+    }
+
+    Set<String> lazyInitExcludes = new HashSet<String>(Arrays.asList(
+        StringUtils.commaDelimitedListToStringArray(environment.getProperty("startup.lazy-init.excludes", ""))));
+
+    context.getBeanFactory().registerSingleton(PackageExcludeFilter.class.getName(), new PackageExcludeFilter(scanExcludes));
+    context.addBeanFactoryPostProcessor(new LazyInitPostProcessor(lazyInitExcludes));
+  }
+
+  private final String[] scanExcludes;
+
+  private static class PackageExcludeFilter extends TypeExcludeFilter {
+
+    PackageExcludeFilter(String[] packages) {
+      this.packages = packages;
+    }
+
+    @Override
+    public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) throws IOException {
+      String className = metadataReader.getClassMetadata().getClassName();
+
+      for (String excluded : packages) {
+        if (className.startsWith(excluded + ".")) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private final String[] packages;
+  }
+
+  private static class LazyInitPostProcessor implements BeanFactoryPostProcessor {
+
+    LazyInitPostProcessor(Set<String> excludes) {
+      this.excludes = excludes;
+    }
+
+    @Override
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+      for (String beanName : beanFactory.getBeanDefinitionNames()) {
+        BeanDefinition definition = beanFactory.getBeanDefinition(beanName);
+
+        if (definition.getRole() != BeanDefinition.ROLE_INFRASTRUCTURE && !excludes.contains(beanName)) {
+          definition.setLazyInit(true);
+        }
+      }
+    }
+
+    private final Set<String> excludes;
+  }
+}
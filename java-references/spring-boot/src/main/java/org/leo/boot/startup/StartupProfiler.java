@@ -0,0 +1,257 @@
+package org.leo.boot.startup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.NoSuchBeanDefinitionException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessorAdapter;
+import org.springframework.beans.factory.support.BeanDefinitionRegistry;
+import org.springframework.beans.factory.support.BeanDefinitionRegistryPostProcessor;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.embedded.EmbeddedServletContainerInitializedEvent;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.core.env.ConfigurableEnvironment;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Startup timeline, to add to the SpringApplication before run()
+ *
+ * The phases (JVM start, environment, bean definitions, beans, embedded server, ready) are always logged, in one line,
+ * it is the line StartupTimeBenchmark looks for
+ * With startup.profiler.enabled=true the creation of every bean is timed as well, and the slowest beans and
+ * auto-configurations are logged : a bean self time excludes the time spent creating its dependencies,
+ * an auto-configuration time is the sum of its own bean and of the beans it declares
+ * With startup.exit-after-ready=true the application stops once ready, to record a class data sharing archive
+ * @author fahdessid
+ */
+public class StartupProfiler implements ApplicationListener<ApplicationEvent> {
+
+  @Override
+  public void onApplicationEvent(ApplicationEvent event) {
+    if (event instanceof ApplicationStartingEvent) {
+      phase("jvm");
+    } else if (event instanceof ApplicationEnvironmentPreparedEvent) {
+      ConfigurableEnvironment environment = ((ApplicationEnvironmentPreparedEvent) event).getEnvironment();
+
+      enabled = environment.getProperty("startup.profiler.enabled", Boolean.class, false);
+      exitAfterReady = environment.getProperty("startup.exit-after-ready", Boolean.class, false);
+      top = environment.getProperty("startup.profiler.top", Integer.class, 20);
+      phase("environment");
+    } else if (event instanceof ApplicationPreparedEvent) {
+      prepared(((ApplicationPreparedEvent) event).getApplicationContext());
+    } else if (event instanceof ContextRefreshedEvent && ((ContextRefreshedEvent) event).getApplicationContext() == context) {
+      phase("beans");
+    } else if (event instanceof EmbeddedServletContainerInitializedEvent) {
+      phase("server");
+    } else if (event instanceof ApplicationReadyEvent && ((ApplicationReadyEvent) event).getApplicationContext() == context) {
+      phase("ready");
+      report();
+
+      if (exitAfterReady) {
+        System.exit(SpringApplication.exit(context));
+      }
+    }
+  }
+
+  private void prepared(ConfigurableApplicationContext context) {
+    this.context = context;
+    phase("context");
+
+    // context post processors run first : its postProcessBeanFactory runs once every configuration class is parsed
+    context.addBeanFactoryPostProcessor(new BeanDefinitionRegistryPostProcessor() {
+
+      @Override
+      public void postProcessBeanDefinitionRegistry(BeanDefinitionRegistry registry) throws BeansException {
+        // nothing, only the end of the bean definitions loading is of interest
+      }
+
+      @Override
+      public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        phase("bean definitions");
+      }
+    });
+
+    if (enabled) {
+      context.getBeanFactory().addBeanPostProcessor(new BeanTimer());
+    }
+  }
+
+  private void phase(String name) {
+    phases.put(name, System.currentTimeMillis());
+  }
+
+  private void report() {
+    long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    StringBuilder timeline = new StringBuilder();
+    long previous = jvmStart;
+
+    for (Map.Entry<String, Long> phase : phases.entrySet()) {
+      timeline.append(", ").append(phase.getKey()).append(' ').append(phase.getValue() - previous).append("ms");
+      previous = phase.getValue();
+    }
+
+    LOGGER.info("Ready in {}ms after JVM start{}", previous - jvmStart, timeline);
+
+    if (!enabled) {
+      return;
+    }
+
+    List<BeanTime> beans = new ArrayList<BeanTime>(beanTimes.values());
+    Map<String, Long> autoConfigurations = new HashMap<String, Long>();
+
+    for (BeanTime bean : beans) {
+      String autoConfiguration = autoConfiguration(bean.name);
+
+      if (autoConfiguration != null) {
+        autoConfigurations.merge(autoConfiguration, bean.selfNanos, Long::sum);
+      }
+    }
+
+    beans.sort((a, b) -> Long.compare(b.selfNanos, a.selfNanos));
+    LOGGER.info("{} beans created, slowest (self / with dependencies) :", beans.size());
+
+    for (BeanTime bean : beans.subList(0, Math.min(top, beans.size()))) {
+      LOGGER.info("  {}ms / {}ms {}", millis(bean.selfNanos), millis(bean.totalNanos), bean.name);
+    }
+
+    LOGGER.info("{} auto-configurations, slowest :", autoConfigurations.size());
+    autoConfigurations.entrySet().stream()
+        .sorted((a, b) -> Long.compare(b.getValue(), a.getValue()))
+        .limit(top)
+        .forEach(entry -> LOGGER.info("  {}ms {}", millis(entry.getValue()), entry.getKey()));
+  }
+
+  /**
+   * The auto-configuration class declaring the bean, or the bean itself if it is an auto-configuration, else null
+   */
+  private String autoConfiguration(String beanName) {
+    ConfigurableListableBeanFactory beanFactory = context.getBeanFactory();
+
+    try {
+      BeanDefinition definition = beanFactory.getMergedBeanDefinition(beanName);
+      String className = definition.getFactoryBeanName() != null
+          ? beanFactory.getMergedBeanDefinition(definition.getFactoryBeanName()).getBeanClassName()
+          : definition.getBeanClassName();
+
+      if (className == null || !className.contains(".autoconfigure.")) {
+        return null;
+      }
+
+      // configuration classes are enhanced once the definitions are loaded
+      String userClassName = ClassUtils.getUserClass(ClassUtils.resolveClassName(className, context.getClassLoader())).getName();
+
+      return userClassName.substring(userClassName.lastIndexOf('.') + 1);
+    } catch (NoSuchBeanDefinitionException e) {
+      // inner beans and manually registered singletons
+      return null;
+    }
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StartupProfiler.class);
+
+  private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+  private final Map<String, BeanTime> beanTimes = new ConcurrentHashMap<String, BeanTime>();
+  private ConfigurableApplicationContext context;
+  private boolean enabled;
+  private boolean exitAfterReady;
+  private int top;
+
+  /**
+   * Beans are created recursively, each thread keeps the stack of the beans being created
+   * A bean failing to be created leaves its frame on the stack, it is dropped when an enclosing bean completes
+   */
+  private class BeanTimer extends InstantiationAwareBeanPostProcessorAdapter {
+
+    @Override
+    public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+      creating.get().push(new Frame(beanName, System.nanoTime()));
+      return null;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+      Deque<Frame> stack = creating.get();
+
+      // objects made by factory beans come here without going through postProcessBeforeInstantiation
+      if (!contains(stack, beanName)) {
+        return bean;
+      }
+
+      Frame frame = stack.pop();
+
+      while (!frame.beanName.equals(beanName)) {
+        frame = stack.pop();
+      }
+
+      long totalNanos = System.nanoTime() - frame.start;
+
+      if (!stack.isEmpty()) {
+        stack.peek().childrenNanos += totalNanos;
+      }
+
+      beanTimes.put(beanName, new BeanTime(beanName, totalNanos - frame.childrenNanos, totalNanos));
+      return bean;
+    }
+
+    private boolean contains(Deque<Frame> stack, String beanName) {
+      for (Iterator<Frame> frames = stack.iterator(); frames.hasNext();) {
+        if (frames.next().beanName.equals(beanName)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private final ThreadLocal<Deque<Frame>> creating = ThreadLocal.withInitial(ArrayDeque::new);
+  }
+
+  private static final class Frame {
+
+    Frame(String beanName, long start) {
+      this.beanName = beanName;
+      this.start = start;
+    }
+
+    private final String beanName;
+    private final long start;
+    private long childrenNanos;
+  }
+
+  private static final class BeanTime {
+
+    BeanTime(String name, long selfNanos, long totalNanos) {
+      this.name = name;
+      this.selfNanos = selfNanos;
+      this.totalNanos = totalNanos;
+    }
+
+    private final String name;
+    private final long selfNanos;
+    private final long totalNanos;
+  }
+}
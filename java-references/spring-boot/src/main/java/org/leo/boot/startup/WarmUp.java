@@ -0,0 +1,200 @@
+package org.leo.boot.startup;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.leo.boot.data.jdbc.LatencyHistogram;
+import org.leo.boot.rest.traffic.TrafficLog;
+import org.leo.boot.rest.traffic.TrafficRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+
+/**
+ * Warm-up run once the application is ready and before it is reported up : /health answers OUT_OF_SERVICE (503)
+ * meanwhile, so a load balancer checking it sends no traffic to a JVM that is still interpreting the controllers,
+ * Jackson and the Mongo codec
+ *
+ * The requests are sent to the application itself, through Tomcat and the whole filter chain, by a few threads for
+ * durationMillis : the GET requests of a recorded traffic log (the hot items of the real traffic, which also loads them
+ * in the caches of the read path) and / or the given uris. Writes are never replayed
+ * The latency of the first and of the last tenth of the warm-up are logged and published on /metrics, as its effect
+ * In fast start mode the lazy beans used by the requests are created here too
+ * @author fahdessid
+ */
+public class WarmUp implements ApplicationListener<ApplicationReadyEvent>, HealthIndicator, PublicMetrics {
+
+  /**
+   * @param trafficLog a TrafficLog file, or null
+   */
+  public WarmUp(String trafficLog, List<String> uris, int threads, long durationMillis) {
+    this.trafficLog = trafficLog;
+    this.uris = uris;
+    this.threads = threads;
+    this.durationMillis = durationMillis;
+  }
+
+  @Override
+  public void onApplicationEvent(ApplicationReadyEvent event) {
+    Environment environment = event.getApplicationContext().getEnvironment();
+    String baseUrl = "http://localhost:" + environment.getProperty("local.server.port", "8080")
+        + environment.getProperty("server.context-path", "");
+
+    Thread thread = new Thread(() -> run(baseUrl), "warm-up");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @Override
+  public Health health() {
+    return warm ? Health.up().build() : Health.outOfService().withDetail("warm-up", "running").build();
+  }
+
+  @Override
+  public Collection<Metric<?>> metrics() {
+    List<Metric<?>> metrics = new ArrayList<Metric<?>>();
+
+    metrics.add(new Metric<Long>("warmup.duration", elapsedMillis));
+    metrics.add(new Metric<Long>("warmup.requests", total.getCount()));
+    metrics.add(new Metric<Long>("warmup.errors", errors.sum()));
+    metrics.add(new Metric<Long>("warmup.first.p50", first.getPercentile(50)));
+    metrics.add(new Metric<Long>("warmup.first.p99", first.getPercentile(99)));
+    metrics.add(new Metric<Long>("warmup.last.p50", last.getPercentile(50)));
+    metrics.add(new Metric<Long>("warmup.last.p99", last.getPercentile(99)));
+
+    return metrics;
+  }
+
+  private void run(String baseUrl) {
+    long start = System.nanoTime();
+
+    try {
+      List<String> requests = requests();
+
+      if (requests.isEmpty()) {
+        LOGGER.warn("Nothing to warm up with, set warmup.uris or warmup.traffic-log");
+        return;
+      }
+
+      sendAll(baseUrl, requests, start);
+    } catch (IOException | RuntimeException e) {
+      LOGGER.error("Warm-up failed, the application is reported up anyway", e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      warm = true;
+    }
+
+    LOGGER.info("Warm-up : {} requests ({} errors) in {}ms, latency p50 / p99 from {}us / {}us to {}us / {}us",
+        total.getCount(), errors.sum(), elapsedMillis, first.getPercentile(50), first.getPercentile(99),
+        last.getPercentile(50), last.getPercentile(99));
+  }
+
+  private List<String> requests() throws IOException {
+    Set<String> requests = new LinkedHashSet<String>(uris);
+
+    if (trafficLog != null) {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(trafficLog)))) {
+        for (TrafficRecord record : TrafficLog.read(in)) {
+          // duplicates dropped : the JIT needs many different calls more than many identical ones
+          if ("GET".equals(record.getMethod()) && requests.size() < MAX_RECORDED) {
+            requests.add(record.getUri());
+          }
+        }
+      }
+    }
+    return new ArrayList<String>(requests);
+  }
+
+  private void sendAll(String baseUrl, List<String> requests, long start) throws InterruptedException {
+    long durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+    long firstUntil = start + durationNanos / 10;
+    long lastFrom = start + durationNanos - durationNanos / 10;
+    long end = start + durationNanos;
+    AtomicInteger next = new AtomicInteger();
+    CountDownLatch done = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      new Thread(() -> {
+        byte[] buffer = new byte[8192];
+
+        try {
+          for (long now = System.nanoTime(); now < end; now = System.nanoTime()) {
+            String uri = requests.get(Math.floorMod(next.getAndIncrement(), requests.size()));
+
+            try {
+              if (get(new URL(baseUrl + uri), buffer) >= HttpURLConnection.HTTP_INTERNAL_ERROR) {
+                errors.increment();
+              }
+
+              long micros = (System.nanoTime() - now) / 1000;
+
+              total.record(micros);
+              if (now < firstUntil) {
+                first.record(micros);
+              } else if (now >= lastFrom) {
+                last.record(micros);
+              }
+            } catch (IOException e) {
+              errors.increment();
+            }
+          }
+        } finally {
+          done.countDown();
+        }
+      }, "warm-up-" + i).start();
+    }
+
+    done.await();
+  }
+
+  /**
+   * Read fully so the kept alive connection is reused
+   */
+  private static int get(URL url, byte[] buffer) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    int status = connection.getResponseCode();
+
+    try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+      while (in != null && in.read(buffer) != -1) {
+        // drained
+      }
+    }
+    return status;
+  }
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(WarmUp.class);
+  private static final int MAX_RECORDED = 10000;
+
+  private final String trafficLog;
+  private final List<String> uris;
+  private final int threads;
+  private final long durationMillis;
+  private final LatencyHistogram total = new LatencyHistogram();
+  private final LatencyHistogram first = new LatencyHistogram();
+  private final LatencyHistogram last = new LatencyHistogram();
+  private final LongAdder errors = new LongAdder();
+  private volatile long elapsedMillis;
+  private volatile boolean warm;
+}
@@ -0,0 +1,70 @@
+package org.leo.boot.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.BadCredentialsException;
+
+/**
+ * Login throttle under many distinct failing emails : the ones that never failed must still be accepted
+ * @author fahdessid
+ */
+public class LoginThrottleTest {
+
+  @Test
+  public void freshEmailAcceptedAfterManyDistinctFailures() throws Exception {
+    LoginThrottle throttle = new LoginThrottle(Integer.MAX_VALUE, 10, 300, 50000, "/login", "/login?error=true");
+
+    for (int i = 0; i < 50000; i++) {
+      fail(throttle, "user" + i + "@example.com");
+    }
+
+    MockFilterChain chain = login(throttle, "fresh@example.com");
+
+    assertNotNull("fresh email refused", chain.getRequest());
+  }
+
+  @Test
+  public void emailRefusedOverItsThreshold() throws Exception {
+    LoginThrottle throttle = new LoginThrottle(Integer.MAX_VALUE, 10, 300, 50000, "/login", "/login?error=true");
+
+    for (int i = 0; i < 10; i++) {
+      fail(throttle, "target@example.com");
+    }
+
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    MockFilterChain chain = new MockFilterChain();
+
+    throttle.filter().doFilter(request("Target@example.com"), response, chain);
+
+    assertNull(chain.getRequest());
+    assertEquals(429, response.getStatus());
+  }
+
+  private static void fail(LoginThrottle throttle, String email) throws Exception {
+    throttle.failureHandler().onAuthenticationFailure(request(email), new MockHttpServletResponse(),
+        new BadCredentialsException("Bad credentials"));
+  }
+
+  private static MockFilterChain login(LoginThrottle throttle, String email) throws Exception {
+    MockFilterChain chain = new MockFilterChain();
+
+    throttle.filter().doFilter(request(email), new MockHttpServletResponse(), chain);
+    return chain;
+  }
+
+  private static HttpServletRequest request(String email) {
+    MockHttpServletRequest request = new MockHttpServletRequest("POST", "/login");
+
+    request.setServletPath("/login");
+    request.setParameter("email", email);
+    return request;
+  }
+}